@@ -0,0 +1,92 @@
+package moapi;
+
+import java.io.*;
+
+/**
+* Keeps the values of each mod in its own .moapi file, one per world,
+* with changes recorded in a journal when journalling is turned on.
+* This is the default store.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class FileOptionStore implements OptionStore {
+	public ModOptionsIndex read(ModOptions options, String worldName) throws IOException {
+		File file = options.getFile(worldName);
+		ModOptionsJournal.flush(file);
+		ModOptionsIndex index;
+		try {
+			index = readBase(file, options);
+		} catch (FileNotFoundException e) {
+			// Expected, nothing stored yet
+			index = new ModOptionsIndex();
+		}
+		return ModOptionsJournal.replay(file, index);
+	}
+
+	public void save(ModOptions options, String worldName, Runnable onFailure) {
+		writeBase(options.getFile(worldName), options.toBytes(worldName.length()==0), onFailure);
+	}
+
+	public boolean record(ModOption option, boolean scope) {
+		return ModOptionsJournal.record(this, option, scope);
+	}
+
+	public boolean flush(ModOptions options, String worldName) {
+		File file = options.getFile(worldName);
+		boolean written = flushBase(file);
+		return ModOptionsJournal.flush(file) && written;
+	}
+
+	public File getWatchFile(ModOptions options, String worldName) {
+		return options.getFile(worldName);
+	}
+
+	public void invalidate(File file) {
+		ModOptionsCache.invalidate(file);
+		// Older changes must not be replayed over the edit
+		ModOptionsJournal.discard(file);
+	}
+
+	//==============
+	// Base files
+	//==============
+
+	/**
+	* Read the values of a mod as last written, without its journal
+	*
+	* @param	file		The mod's own .moapi file
+	* @param	options	Top level options of the mod, to read only its registered
+	*									options, or null to read everything
+	* @return	Index of the values, shared and not to be modified
+	* @throws	FileNotFoundException	If nothing is stored for the mod
+	* @throws	IOException	If the values could not be read
+	*/
+	protected ModOptionsIndex readBase(File file, ModOptions options) throws IOException {
+		// Anything still waiting to be saved is newer than the disk
+		ModOptionsWriter.flush(file);
+		return ModOptionsCache.read(file, (options == null) ? null : options.getNames());
+	}
+
+	/**
+	* Queue the values of a mod to be written
+	*
+	* @param	file			The mod's own .moapi file
+	* @param	data			Contents of the file
+	* @param	onFailure	Run on the I/O thread if the write fails, may be null
+	*/
+	protected void writeBase(File file, byte[] data, Runnable onFailure) {
+		ModOptionsWriter.write(file, data, onFailure);
+	}
+
+	/**
+	* Write the values of a mod now if they are waiting to be written
+	*
+	* @param	file	The mod's own .moapi file
+	* @return	False if the write failed
+	*/
+	protected boolean flushBase(File file) {
+		return ModOptionsWriter.flush(file);
+	}
+}
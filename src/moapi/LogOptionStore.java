@@ -0,0 +1,608 @@
+package moapi;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+* Keeps every option value, for every mod and scope, in one log file.
+* Each change is appended to the log as a record keyed by scope, mod,
+* section and option id, so a change costs one small append however
+* many options a mod has.  All values are held in memory, rebuilt from
+* the log when it is opened, and once most records in the log have been
+* replaced by newer ones it is rewritten in the background with only the
+* current values.  Chosen with store=log.
+*
+* <pre>
+* magic    4 bytes "MOAL"
+* version  1 byte
+* records  each: int length, payload, int CRC32 of the payload
+*            payload: byte op, then scope, mod, section, id and value (set
+*                     only), each an int length and that many bytes UTF-8
+* </pre>
+*
+* A record cut short by a crash fails its length or CRC check and the log
+* is cut back to the last whole record when opened.  Version 1 logs, which
+* stored strings with writeUTF, are read and rewritten in the current
+* format.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class LogOptionStore implements OptionStore, Closeable {
+	/**
+	* First bytes of every log file
+	*/
+	public static final byte[] MAGIC = {'M', 'O', 'A', 'L'};
+
+	/**
+	* Current version of the format
+	*/
+	public static final int VERSION = 2;
+
+	/**
+	* Records the log must hold before it is considered for rewriting
+	*/
+	public static final int COMPACT_MIN = 4096;
+
+	/** Record sets a value */
+	private static final byte OP_SET = 1;
+	/** Record removes a value */
+	private static final byte OP_REMOVE = 2;
+
+	/**
+	* The log file
+	*/
+	private final File file;
+
+	/**
+	* Current values, keyed by scope and mod id
+	*/
+	private final HashMap<String, ModOptionsIndex> values = new HashMap<String, ModOptionsIndex>();
+
+	/**
+	* Records not yet appended to the log
+	*/
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+	/**
+	* Run if the pending records can not be written
+	*/
+	private ArrayList<Runnable> failures = new ArrayList<Runnable>();
+
+	/**
+	* True while an append is queued on the I/O thread
+	*/
+	private boolean queued = false;
+
+	/**
+	* True while a rewrite is queued, or needed after a failed append
+	*/
+	private boolean compacting = false;
+
+	/**
+	* Records in the log, including those replaced by newer ones
+	*/
+	private int records = 0;
+
+	/**
+	* Values currently held
+	*/
+	private int live = 0;
+
+	/**
+	* Open handle appends are written to, null until opened
+	*/
+	private FileOutputStream out = null;
+
+	/**
+	* True once the log has been read
+	*/
+	private volatile boolean opened = false;
+
+	/**
+	* Writes what is pending when the game exits, null while not open
+	*/
+	private Thread shutdownHook = null;
+
+	/**
+	* Create the store in config/moapi.log
+	*/
+	public LogOptionStore() {
+		this(new File(ModOptionsAPI.getMinecraftFolder() + "config/moapi.log"));
+	}
+
+	/**
+	* Create the store in the given file
+	*
+	* @param	file	Log file, created if needed
+	*/
+	public LogOptionStore(File file) {
+		this.file = file;
+	}
+
+	//==============
+	// OptionStore
+	//==============
+
+	public ModOptionsIndex read(ModOptions options, String worldName) throws IOException {
+		open();
+		synchronized (this) {
+			ModOptionsIndex index = values.get(getKey(worldName.length()==0, worldName, options.getID()));
+			// Copied, the values held change as options do
+			return (index == null) ? new ModOptionsIndex() : index.copy();
+		}
+	}
+
+	public void save(ModOptions options, String worldName, Runnable onFailure) {
+		boolean global = (worldName.length()==0);
+		ModOptionsIndex saved = new ModOptionsIndex();
+		options.saveValues(saved, global);
+		try {
+			open();
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not open " + file.getName() + ": " + e.getMessage());
+			if (onFailure != null) {
+				onFailure.run();
+			}
+			return;
+		}
+		String scope = (global) ? "" : worldName;
+		String modID = options.getID();
+		synchronized (this) {
+			ModOptionsIndex current = values.get(getKey(global, scope, modID));
+			try {
+				// Only what differs from the values held is appended
+				for (String section : saved.getSectionNames()) {
+					Map<String, Object> stored = (current == null) ? null : current.getSection(section);
+					for (Map.Entry<String, Object> entry : saved.getSection(section).entrySet()) {
+						String value = entry.getValue().toString();
+						if ((stored == null) || !value.equals(stored.get(entry.getKey()))) {
+							append(OP_SET, scope, modID, section, entry.getKey(), value);
+						}
+					}
+				}
+				if (current != null) {
+					for (String section : current.getSectionNames()) {
+						Map<String, Object> kept = saved.getSection(section);
+						for (String id : new ArrayList<String>(current.getSection(section).keySet())) {
+							if (!kept.containsKey(id)) {
+								append(OP_REMOVE, scope, modID, section, id, null);
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("(ModOptionsAPI): Could not save options for " + modID + ": " + e.getMessage());
+				if (onFailure != null) {
+					onFailure.run();
+				}
+				// Records made before the failure are still written
+				queueWrite();
+				return;
+			}
+			if (onFailure != null) {
+				failures.add(onFailure);
+			}
+			queueWrite();
+		}
+	}
+
+	public boolean record(ModOption option, boolean scope) {
+		try {
+			open();
+		} catch (IOException e) {
+			return false;
+		}
+		String worldName = (scope) ? "" : ModOptionsAPI.getWorldName();
+		String modID = option.getTopLevel().getID();
+		String section = option.getParent().getSectionName();
+		String id = option.getID().replace(":", "");
+		synchronized (this) {
+			try {
+				if (scope || !option.useGlobalValue()) {
+					append(OP_SET, worldName, modID, section, id, option.getValue(scope).toString());
+				} else {
+					append(OP_REMOVE, worldName, modID, section, id, null);
+				}
+			} catch (IOException e) {
+				// Left for the option to be saved with its mod
+				System.err.println("(ModOptionsAPI): Could not record " + modID + " " + id + ": " + e.getMessage());
+				return false;
+			}
+			queueWrite();
+		}
+		return true;
+	}
+
+	public boolean flush(ModOptions options, String worldName) {
+		synchronized (ModOptionsWriter.ioLock) {
+			return writePending();
+		}
+	}
+
+	public File getWatchFile(ModOptions options, String worldName) {
+		// Not meant to be edited by hand
+		return null;
+	}
+
+	public void invalidate(File file) {
+	}
+
+	//==============
+	// Records
+	//==============
+
+	/**
+	* Get the key a mod's values are held under
+	*
+	* @param	global		True for global values
+	* @param	worldName	Name of world/ server
+	* @param	modID			Id of the mod
+	* @return	Key of the values
+	*/
+	private static String getKey(boolean global, String worldName, String modID) {
+		return ((global) ? "" : worldName) + "\0" + modID;
+	}
+
+	/**
+	* Queue a record to be appended, then apply it to the values held, so
+	* the two never disagree.  Called with this store locked.
+	*
+	* @param	op				OP_SET or OP_REMOVE
+	* @param	scope			Name of world/ server, blank for global
+	* @param	modID			Id of the mod
+	* @param	section		Section of the option
+	* @param	id				Id of the option
+	* @param	value			New value, null when removing
+	* @throws	IOException	If the record could not be made, nothing is changed
+	*/
+	private void append(byte op, String scope, String modID, String section, String id, String value) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(payload);
+		data.writeByte(op);
+		ModOptionsBinary.writeString(data, scope);
+		ModOptionsBinary.writeString(data, modID);
+		ModOptionsBinary.writeString(data, section);
+		ModOptionsBinary.writeString(data, id);
+		if (op == OP_SET) {
+			ModOptionsBinary.writeString(data, value);
+		}
+		data.close();
+		writeRecord(new DataOutputStream(pending), payload.toByteArray());
+		apply(op, scope, modID, section, id, value);
+	}
+
+	/**
+	* Apply a record to the values held.  Called with this store locked.
+	*
+	* @param	op				OP_SET or OP_REMOVE
+	* @param	scope			Name of world/ server, blank for global
+	* @param	modID			Id of the mod
+	* @param	section		Section of the option
+	* @param	id				Id of the option
+	* @param	value			New value, null when removing
+	*/
+	private void apply(byte op, String scope, String modID, String section, String id, String value) {
+		String key = scope + "\0" + modID;
+		ModOptionsIndex index = values.get(key);
+		if (index == null) {
+			index = new ModOptionsIndex();
+			values.put(key, index);
+		}
+		boolean held = index.getSection(section).containsKey(id);
+		if (op == OP_SET) {
+			index.put(section, id, value);
+			if (!held) {
+				live++;
+			}
+		} else if (held) {
+			index.remove(section, id);
+			live--;
+		}
+		records++;
+	}
+
+	/**
+	* Write a record with its length and checksum
+	*
+	* @param	out			Stream to write to
+	* @param	payload	Contents of the record
+	* @throws	IOException	If the stream fails
+	*/
+	private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.writeInt((int)crc.getValue());
+		out.flush();
+	}
+
+	//==============
+	// File
+	//==============
+
+	/**
+	* Read the log into memory the first time the store is used
+	*
+	* @throws	IOException	If the log could not be read or created
+	*/
+	private void open() throws IOException {
+		if (opened) {
+			return;
+		}
+		synchronized (ModOptionsWriter.ioLock) {
+			synchronized (this) {
+				if (out != null) {
+					return;
+				}
+				if (file.exists()) {
+					if (readLog() < VERSION) {
+						// Records are only ever appended in the current format
+						byte[] log = snapshot();
+						pending = new ByteArrayOutputStream();
+						if (!ModOptionsWriter.writeFile(file, log)) {
+							values.clear();
+							records = 0;
+							live = 0;
+							throw new IOException("Could not upgrade " + file.getPath());
+						}
+					}
+				} else {
+					file.getParentFile().mkdirs();
+					if (!ModOptionsWriter.writeFile(file, header())) {
+						throw new IOException("Could not create " + file.getPath());
+					}
+				}
+				out = new FileOutputStream(file, true);
+				opened = true;
+				shutdownHook = new Thread("MOAPI Log Shutdown") {
+					public void run() {
+						synchronized (ModOptionsWriter.ioLock) {
+							writePending();
+						}
+					}
+				};
+				Runtime.getRuntime().addShutdownHook(shutdownHook);
+			}
+		}
+	}
+
+	/**
+	* Write anything pending and close the log, when the store is replaced.
+	* The log is opened and read again if the store is used after.
+	*/
+	public void close() {
+		synchronized (ModOptionsWriter.ioLock) {
+			writePending();
+			synchronized (this) {
+				if (out == null) {
+					return;
+				}
+				try {
+					out.close();
+				} catch (IOException ignored) {}
+				out = null;
+				opened = false;
+				values.clear();
+				records = 0;
+				live = 0;
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException ignored) {
+					// Already exiting
+				}
+				shutdownHook = null;
+			}
+		}
+	}
+
+	/**
+	* Rebuild the values held from the log, cutting off a damaged end.
+	* Called with the I/O lock and this store locked.
+	*
+	* @return	Version of the log's format
+	* @throws	IOException	If the log could not be read
+	*/
+	private int readLog() throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		byte[] head = new byte[MAGIC.length];
+		if ((bytes.length < MAGIC.length + 1) || (in.read(head) != head.length) || !Arrays.equals(head, MAGIC)) {
+			throw new IOException(file.getName() + " is not an options log");
+		}
+		int version = in.readUnsignedByte();
+		if (version > VERSION) {
+			throw new IOException("Unsupported options log version " + version);
+		}
+		int good = MAGIC.length + 1;
+		while (good < bytes.length) {
+			try {
+				int length = in.readInt();
+				if ((length < 0) || (length > bytes.length - good - 8)) {
+					break;
+				}
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if (in.readInt() != (int)crc.getValue()) {
+					break;
+				}
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+				byte op = record.readByte();
+				String scope = readString(record, version);
+				String modID = readString(record, version);
+				String section = readString(record, version);
+				String id = readString(record, version);
+				apply(op, scope, modID, section, id, (op == OP_SET) ? readString(record, version) : null);
+				good += length + 8;
+			} catch (EOFException e) {
+				break;
+			}
+		}
+		if (good < bytes.length) {
+			System.err.println("(ModOptionsAPI): Dropping " + (bytes.length - good) + " damaged bytes from the end of " + file.getName());
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(good);
+			} finally {
+				raf.close();
+			}
+		}
+		return version;
+	}
+
+	/**
+	* Read a string of a record
+	*
+	* @param	in				Payload of the record
+	* @param	version		Version of the log's format
+	* @return	The string
+	* @throws	IOException	If the payload is cut short
+	*/
+	private static String readString(DataInputStream in, int version) throws IOException {
+		return (version < 2) ? in.readUTF() : ModOptionsBinary.readString(in);
+	}
+
+	/**
+	* Get the bytes every log starts with
+	*
+	* @return	Magic number and version
+	*/
+	private static byte[] header() {
+		byte[] head = Arrays.copyOf(MAGIC, MAGIC.length + 1);
+		head[MAGIC.length] = VERSION;
+		return head;
+	}
+
+	/**
+	* Have the pending records appended on the I/O thread.  Called with
+	* this store locked.
+	*/
+	private void queueWrite() {
+		if (queued) {
+			return;
+		}
+		queued = true;
+		ModOptionsWriter.execute(new Runnable() {
+			public void run() {
+				writePending();
+			}
+		});
+	}
+
+	/**
+	* Append the pending records to the log and sync it, or rewrite the log
+	* if it is mostly replaced records.  Called with the I/O lock held.
+	*
+	* @return	False if the records could not be written
+	*/
+	private boolean writePending() {
+		byte[] data;
+		ArrayList<Runnable> onFailure;
+		boolean rewrite;
+		synchronized (this) {
+			queued = false;
+			if ((out == null) || ((pending.size() == 0) && !compacting)) {
+				return true;
+			}
+			rewrite = compacting || ((records > COMPACT_MIN) && (records > live * 2));
+			compacting = false;
+			data = (rewrite) ? snapshot() : pending.toByteArray();
+			onFailure = failures;
+			pending = new ByteArrayOutputStream();
+			failures = new ArrayList<Runnable>();
+		}
+		// Records made from here on wait in pending for the next write
+		boolean written = (rewrite) ? rewrite(data) : appendLog(data);
+		if (!written) {
+			for (Runnable task : onFailure) {
+				task.run();
+			}
+			// The end of the log may now be damaged, rewrite it next time
+			synchronized (this) {
+				compacting = true;
+			}
+		}
+		return written;
+	}
+
+	/**
+	* Append records to the log and sync it.  Called with the I/O lock held.
+	*
+	* @param	data	Records to append
+	* @return	True if the records were written
+	*/
+	private boolean appendLog(byte[] data) {
+		try {
+			out.write(data);
+			out.flush();
+			out.getFD().sync();
+			return true;
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not write to " + file.getName() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	* Replace the log with a new one.  Called with the I/O lock held.
+	*
+	* @param	data	Contents of the new log
+	* @return	True if the log was replaced
+	*/
+	private boolean rewrite(byte[] data) {
+		try {
+			out.close();
+		} catch (IOException ignored) {}
+		boolean written = ModOptionsWriter.writeFile(file, data);
+		try {
+			out = new FileOutputStream(file, true);
+		} catch (IOException e) {
+			// Keep appending to the old handle's file, which is still whole
+			System.err.println("(ModOptionsAPI): Could not reopen " + file.getName() + ": " + e.getMessage());
+			return false;
+		}
+		return written;
+	}
+
+	/**
+	* Build a log holding only the current values, and start counting
+	* records again from it.  Called with this store locked.
+	*
+	* @return	Contents of the new log
+	*/
+	private byte[] snapshot() {
+		HashMap<String, ModOptionsIndex> held = new HashMap<String, ModOptionsIndex>(values);
+		values.clear();
+		records = 0;
+		live = 0;
+		pending = new ByteArrayOutputStream();
+		// Re-append every current value, rebuilding what is held as it goes
+		for (Map.Entry<String, ModOptionsIndex> entry : held.entrySet()) {
+			int split = entry.getKey().indexOf('\0');
+			String scope = entry.getKey().substring(0, split);
+			String modID = entry.getKey().substring(split + 1);
+			ModOptionsIndex index = entry.getValue();
+			for (String section : index.getSectionNames()) {
+				for (Map.Entry<String, Object> value : index.getSection(section).entrySet()) {
+					try {
+						append(OP_SET, scope, modID, section, value.getKey(), value.getValue().toString());
+					} catch (IOException e) {
+						// Only in-memory streams are used
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}
+		byte[] head = header();
+		byte[] body = pending.toByteArray();
+		byte[] log = Arrays.copyOf(head, head.length + body.length);
+		System.arraycopy(body, 0, log, head.length, body.length);
+		return log;
+	}
+}
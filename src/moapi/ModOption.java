@@ -45,10 +45,77 @@ abstract public class ModOption<E> {
 	*/
 	protected boolean global = (ModOptionsAPI.isServer() ? false : true);
 
+	/**
+	* Value in use, from the most specific scope holding one.  Worked out
+	* again whenever a scope's value or the current dimension changes.
+	*
+	* @since	1.5
+	*/
+	protected E effective = null;
+
+	/**
+	* Scope the value in use came from
+	*
+	* @since	1.5
+	*/
+	private OptionScope effectiveScope = OptionScope.GLOBAL;
+
+	/**
+	* Values of the layers held in memory, such as server and dimension
+	* values, keyed by OptionScope.getKey.  Null if none are set.  Replaced
+	* whole rather than changed, so it can be read without locking.
+	*
+	* @since	1.5
+	*/
+	private volatile HashMap<String, E> heldValues = null;
+
 	/**
 	* The callback object
 	*/
 	protected ModOptionCallback callback = null;
+
+	/**
+	* Menu this option has been added to
+	*
+	* @since	1.5
+	*/
+	protected ModOptions parent = null;
+
+	/**
+	* True if the global value has changed since it was last saved or loaded.
+	* Set again from the writer thread if a save fails.
+	*
+	* @since	1.5
+	*/
+	private volatile boolean dirtyGlobal = true;
+
+	/**
+	* True if the local value has changed since it was last saved or loaded
+	*
+	* @since	1.5
+	*/
+	private volatile boolean dirtyLocal = true;
+
+	/**
+	* Callbacks to tell of changes, collected by ModOptionsListeners
+	*
+	* @since	1.5
+	*/
+	private ModOptionCallback[] dispatch = null;
+
+	/**
+	* Listener generation the callbacks were collected in
+	*
+	* @since	1.5
+	*/
+	private int dispatchGeneration = 0;
+
+	/**
+	* Position of this option in each OptionSnapshot, -1 until registered
+	*
+	* @since	1.5
+	*/
+	private int slot = -1;
 	
 	//==============
 	// Constructor
@@ -137,12 +204,24 @@ abstract public class ModOption<E> {
         changed = true;
 			}
 		}
-	  if (hasCallback() && changed) {
-	    getCallback().onChange(this);
+	  if (changed) {
+	    valueChanged(scope);
     }
     return this;
 	}
 
+	/**
+	* Called after the value for a scope has changed
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	*/
+	protected void valueChanged(boolean scope) {
+		resolve();
+		markDirty(scope);
+		ModOptionsEvents.post(this);
+	}
+
 	/**
 	* Set the current used value of this option selector
 	* 
@@ -180,10 +259,173 @@ abstract public class ModOption<E> {
 	* @return  the option for further operations  	
 	*/
 	public ModOption setGlobal(boolean global) {
-		this.global = global;
+		if (this.global != global) {
+			this.global = global;
+			resolve();
+			// Only options not using the global value are saved per world
+			markDirty(false);
+			ModOptionsEvents.scopeChanged(this);
+		}
+		return this;
+	}
+
+	/**
+	* Set the value of a scope.  Global and world values are saved as
+	* usual, server and dimension values are only held until the player
+	* moves to another world or server.
+	*
+	* @since	1.5
+	* @param	scope		Scope to set
+	* @param	context	Name of the dimension for DIMENSION, otherwise ignored
+	* @param	value		New value, null to clear a server or dimension value
+	* @return  the option for further operations
+	*/
+	public ModOption setScopeValue(OptionScope scope, String context, E value) {
+		Boolean saved = scope.getSaved();
+		if (saved != null) {
+			return setValue(value, saved);
+		}
+		synchronized (this) {
+			HashMap<String, E> values = (heldValues == null) ? new HashMap<String, E>() : new HashMap<String, E>(heldValues);
+			if (value == null) {
+				values.remove(scope.getKey(context));
+			} else {
+				values.put(scope.getKey(context), value);
+			}
+			heldValues = (values.isEmpty()) ? null : values;
+		}
+		update();
+		return this;
+	}
+
+	/**
+	* Clear the server and dimension values, when the player moves to
+	* another world or server
+	*
+	* @since	1.5
+	*/
+	void clearScopeValues() {
+		if (heldValues != null) {
+			synchronized (this) {
+				heldValues = null;
+			}
+			update();
+		}
+	}
+
+	/**
+	* Work out the value in use again after the context of a layer, such as
+	* the current dimension, changed
+	*
+	* @since	1.5
+	*/
+	void contextChanged() {
+		if (heldValues != null) {
+			update();
+		}
+	}
+
+	/**
+	* Work out the value in use again, telling callbacks if it changed
+	*
+	* @since	1.5
+	*/
+	private void update() {
+		E old = effective;
+		resolve();
+		if ((old == null) ? (effective != null) : !old.equals(effective)) {
+			ModOptionsEvents.post(this);
+		}
+	}
+
+	/**
+	* Work out the value in use again, called when the value of a scope,
+	* the global flag or the current dimension changes
+	*
+	* @since	1.5
+	*/
+	protected void resolve() {
+		OptionScope scope = OptionScope.GLOBAL;
+		E result = getGlobalValue();
+		HashMap<String, E> held = heldValues;
+		for (OptionScope layer : OptionScope.values()) {
+			E layerValue;
+			Boolean saved = layer.getSaved();
+			if (saved != null) {
+				// The world value only counts while it is in use
+				layerValue = (saved || !global) ? getValue(saved) : null;
+			} else {
+				String key = layer.getCurrentKey();
+				layerValue = ((held == null) || (key == null)) ? null : held.get(key);
+			}
+			if (layerValue != null) {
+				scope = layer;
+				result = layerValue;
+			}
+		}
+		effectiveScope = scope;
+		setEffective(result);
+	}
+
+	/**
+	* Store the value in use
+	*
+	* @since	1.5
+	* @param	value	Value worked out by resolve
+	*/
+	protected void setEffective(E value) {
+		effective = value;
+	}
+
+	/**
+	* Set the menu this option belongs to
+	*
+	* @since	1.5
+	* @param	parent	Menu holding this option
+	* @return  the option for further operations  	
+	*/
+	protected ModOption setParent(ModOptions parent) {
+		this.parent = parent;
+		ModOptionsListeners.invalidate();
 		return this;
 	}
 
+	/**
+	* Flag this option as needing to be saved for a scope
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	*/
+	protected void markDirty(boolean scope) {
+		if (!(this instanceof ModOptions) && (parent != null) && !parent.isLoading() && ModOptionsAPI.getStore().record(this, scope)) {
+			// Already stored on its own, only the saved text is out of date
+			parent.sectionChanged(scope);
+			return;
+		}
+		if (scope) {
+			dirtyGlobal = true;
+		} else {
+			dirtyLocal = true;
+		}
+		if (parent != null) {
+			parent.childChanged(this, scope);
+		}
+	}
+
+	/**
+	* Flag this option as matching what is on disk for a scope
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	*/
+	protected void clearDirty(boolean scope) {
+		if (scope) {
+			dirtyGlobal = false;
+		} else {
+			dirtyLocal = false;
+		}
+	}
+
 	/**
 	* Set the current value from a string with the given scope
 	*
@@ -193,6 +435,25 @@ abstract public class ModOption<E> {
 	* @return  the option for further operations  	
 	*/
 	public abstract ModOption fromString(String strValue, boolean scope);
+
+	/**
+	* Set the current value from a value read from disk with the given scope.
+	* Values already of the option's type are set directly, anything else
+	* goes through fromString.
+	*
+	* @since	1.5
+	* @param	objValue	New value for scope
+	* @param	scope			Scope value. True for global
+	* @return  the option for further operations  	
+	*/
+	@SuppressWarnings("unchecked")
+	public ModOption fromObject(Object objValue, boolean scope) {
+		E current = getValue(scope);
+		if ((current != null) && (current.getClass() == objValue.getClass())) {
+			return setValue((E)objValue, scope);
+		}
+		return fromString(objValue.toString(), scope);
+	}
 	
 	/**
 	* Set the callback for this option
@@ -202,6 +463,33 @@ abstract public class ModOption<E> {
 	*/
 	public ModOption setCallback(ModOptionCallback callback) {
 		this.callback = callback;
+		ModOptionsListeners.invalidate();
+		return this;
+	}
+
+	/**
+	* Add a listener told of changes to this option, or for a menu, to
+	* every option below it.  Unlike the callback, any number of listeners
+	* can be added.
+	*
+	* @since	1.5
+	* @param	listener	Callback to tell of changes
+	* @return  the option for further operations
+	*/
+	public ModOption addListener(ModOptionCallback listener) {
+		ModOptionsListeners.add(this, listener);
+		return this;
+	}
+
+	/**
+	* Remove a listener added to this option
+	*
+	* @since	1.5
+	* @param	listener	Callback to stop telling of changes
+	* @return  the option for further operations
+	*/
+	public ModOption removeListener(ModOptionCallback listener) {
+		ModOptionsListeners.remove(this, listener);
 		return this;
 	}
 	
@@ -243,7 +531,7 @@ abstract public class ModOption<E> {
 	* @return	Value of this option selector
 	*/
 	public E getValue() {
-	  return getValue(global);
+	  return effective;
 	}
 	
 	/**
@@ -279,6 +567,33 @@ abstract public class ModOption<E> {
 		return localValue;
 	}
 	
+	/**
+	* Get the value of a scope
+	*
+	* @since	1.5
+	* @param	scope		Scope to get
+	* @param	context	Name of the dimension for DIMENSION, otherwise ignored
+	* @return	Value of the scope, null if a server or dimension value is not set
+	*/
+	public E getScopeValue(OptionScope scope, String context) {
+		Boolean saved = scope.getSaved();
+		if (saved != null) {
+			return getValue(saved);
+		}
+		HashMap<String, E> held = heldValues;
+		return (held == null) ? null : held.get(scope.getKey(context));
+	}
+
+	/**
+	* Get the scope the value in use comes from
+	*
+	* @since	1.5
+	* @return	Most specific scope holding a value
+	*/
+	public OptionScope getEffectiveScope() {
+		return effectiveScope;
+	}
+
 	/**
 	* Set this option to only use the global value
 	*
@@ -288,6 +603,41 @@ abstract public class ModOption<E> {
 		return global;
 	}
 
+	/**
+	* Get the menu this option belongs to
+	*
+	* @since	1.5
+	* @return	Menu holding this option (or null if not added to one)
+	*/
+	public ModOptions getParent() {
+		return parent;
+	}
+
+	/**
+	* Get the top level menu of the mod this option belongs to
+	*
+	* @since	1.5
+	* @return	Top level menu (or null if not added to one)
+	*/
+	public ModOptions getTopLevel() {
+		ModOption option = this;
+		while (option.parent != null) {
+			option = option.parent;
+		}
+		return (option instanceof ModOptions) ? (ModOptions)option : null;
+	}
+
+	/**
+	* Check if this option has changed since it was last saved or loaded
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	* @return	True if the value for the scope needs saving
+	*/
+	public boolean isDirty(boolean scope) {
+		return (scope) ? dirtyGlobal : dirtyLocal;
+	}
+
 	/**
 	* Get the display string for the option for a global value
 	*
@@ -322,6 +672,44 @@ abstract public class ModOption<E> {
 		return callback;
 	}
 	
+	/**
+	* Get every callback to tell when this option changes: its own
+	* callback, then listeners of the option, its menus and every option
+	*
+	* @since	1.5
+	* @return	Callbacks, shared and not to be modified
+	*/
+	ModOptionCallback[] getDispatch() {
+		int generation = ModOptionsListeners.getGeneration();
+		ModOptionCallback[] current = dispatch;
+		if ((current == null) || (dispatchGeneration != generation)) {
+			current = ModOptionsListeners.collect(this);
+			dispatch = current;
+			dispatchGeneration = generation;
+		}
+		return current;
+	}
+
+	/**
+	* Get the position of this option in each OptionSnapshot
+	*
+	* @since	1.5
+	* @return	Slot of the option, -1 if its mod is not registered
+	*/
+	int getSlot() {
+		return slot;
+	}
+
+	/**
+	* Set the position of this option in each OptionSnapshot
+	*
+	* @since	1.5
+	* @param	slot	Slot given to the option
+	*/
+	void setSlot(int slot) {
+		this.slot = slot;
+	}
+
 	/**
 	* Check if this option has a callback
 	*
@@ -11,6 +11,27 @@ package moapi;
 public class ModOptionBoolean extends ModOption<Boolean> {
 	private String onVal 	= "On";
 	private String offVal 	= "Off";
+
+	/**
+	* Global value of this option
+	*
+	* @since	1.5
+	*/
+	protected boolean booleanValue = false;
+
+	/**
+	* Local/server value of this option
+	*
+	* @since	1.5
+	*/
+	protected boolean localBooleanValue = false;
+
+	/**
+	* Value in use, kept unboxed alongside the boxed value
+	*
+	* @since	1.5
+	*/
+	private boolean effectiveBoolean = false;
 	
 	//==============
 	// Constructors
@@ -34,8 +55,9 @@ public class ModOptionBoolean extends ModOption<Boolean> {
 	*/
 	public ModOptionBoolean(String id, String name, boolean value) {
 		super(id, name);
-		this.value = value;
-		this.localValue = value;
+		booleanValue = value;
+		localBooleanValue = value;
+		resolve();
 	}
 	
 	//==============
@@ -50,9 +72,49 @@ public class ModOptionBoolean extends ModOption<Boolean> {
 	* @return  the option for further operations  	
 	*/
 	public ModOption fromString(String strValue, boolean scope) {
-    return setValue(Boolean.valueOf(strValue), scope);
+    return setBoolean(Boolean.parseBoolean(strValue), scope);
   }
 
+	/**
+	* Set the current value used for the given scope
+	*
+	* @since	1.5
+	* @param	value	New value for scope
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations  	
+	*/
+	public ModOption setBoolean(boolean value, boolean scope) {
+		if (scope) {
+			if (booleanValue == value) {
+				return this;
+			}
+			booleanValue = value;
+		} else {
+			if (localBooleanValue == value) {
+				return this;
+			}
+			localBooleanValue = value;
+		}
+		valueChanged(scope);
+		return this;
+	}
+
+	/**
+	* Set the current value used for the given scope
+	*
+	* @param	value	New value for scope
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations  	
+	*/
+	public ModOption setValue(Boolean value, boolean scope) {
+		return setBoolean(value, scope);
+	}
+
+	protected void setEffective(Boolean value) {
+		super.setEffective(value);
+		effectiveBoolean = value;
+	}
+
 
 	/**
 	* Set the display values for this boolean
@@ -70,6 +132,45 @@ public class ModOptionBoolean extends ModOption<Boolean> {
 	//==============
 	// Getters
 	//==============
+
+	/**
+	* Get the value currently used by this option
+	*
+	* @since	1.5
+	* @return	Value of this option
+	*/
+	public boolean getBoolean() {
+		return effectiveBoolean;
+	}
+
+	/**
+	* Get the value of this option for a scope
+	*
+	* @since	1.5
+	* @param	scope	True for global value
+	* @return	Value of this option in the given scope
+	*/
+	public boolean getBoolean(boolean scope) {
+		return (scope) ? booleanValue : localBooleanValue;
+	}
+
+	/**
+	* Returns the global value of this option
+	*
+	* @return	Global value of this option
+	*/
+	public Boolean getGlobalValue() {
+		return booleanValue;
+	}
+
+	/**
+	* Get the local value
+	*
+	* @return	Local value of this option
+	*/
+	public Boolean getLocalValue() {
+		return localBooleanValue;
+	}
 	
 	/**
 	* Get the display string for the option.  Value is local value if scope is
@@ -83,7 +184,7 @@ public class ModOptionBoolean extends ModOption<Boolean> {
 		if ((!scope) && (useGlobalValue())) {
 		  return getName() + ": GLOBAL";
 		}
-		return getName() + ": " + getStringValue(getValue(scope));
+		return getName() + ": " + getStringValue(getBoolean(scope));
 	}
 	
 	/**
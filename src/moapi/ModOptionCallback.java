@@ -26,6 +26,42 @@ public abstract class ModOptionCallback {
 	*/
 	public void onChange(ModOption option) {
   }
+
+	/**
+	* Called when the key bound to a key option is pressed or released
+	* in game
+	*
+	* @since	1.5
+	* @param	option		The key option
+	* @param	pressed		True if pressed, false if released
+	*/
+	public void onKey(ModOption option, boolean pressed) {
+	}
+
+	/**
+	* Called with every option that changed in a batch or in one load,
+	* instead of calling onChange for each
+	*
+	* @since	1.5
+	* @param	options		The options that changed, in the order they changed
+	*/
+	public void onChanges(ModOption[] options) {
+		for (ModOption option : options) {
+			onChange(option);
+		}
+	}
+
+	/**
+	* Check if changes should be sent in batches rather than one at a time.
+	* Batched callbacks are told once per tick (or events.interval) of each
+	* option that changed, after its last change.
+	*
+	* @since	1.5
+	* @return	True to receive changes in batches
+	*/
+	public boolean isBatched() {
+		return false;
+	}
 	
 	/**
 	* What to do upon setting a global value
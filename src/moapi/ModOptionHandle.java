@@ -0,0 +1,220 @@
+package moapi;
+
+import java.util.concurrent.atomic.*;
+
+/**
+* A typed reference to a single option, found once from its path in
+* ModOptionsRegistry such as "mymod/render/distance" (mod id, sub menu
+* ids, option id).
+* Reading a handle goes straight to the option's value, with no map
+* lookups or boxing, so it is cheap enough to do every tick.
+*
+* Handles follow the option values through loads and world changes.  If
+* an option or mod is replaced by registering another with the same id,
+* the handle finds the new one the next time it is read.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+abstract public class ModOptionHandle<T extends ModOption> {
+	/**
+	* Changed whenever options are added, so handles know to look again
+	*/
+	private static final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	* Path the option was found from
+	*/
+	private final String path;
+
+	/**
+	* Type the option must be
+	*/
+	private final Class<T> type;
+
+	/**
+	* The option, as last found
+	*/
+	protected T option;
+
+	/**
+	* Generation the option was found in
+	*/
+	private int found;
+
+	//==============
+	// Constructors
+	//==============
+
+	/**
+	* Find the option a handle refers to
+	*
+	* @throws	IllegalArgumentException	Thrown when no option of the type has the path
+	* @param	path	Path of the option
+	* @param	type	Type the option must be
+	*/
+	protected ModOptionHandle(String path, Class<T> type) {
+		this.path = path;
+		this.type = type;
+		found = generation.get();
+		option = find(path);
+		if (option == null) {
+			throw new IllegalArgumentException("No suitable option at " + path);
+		}
+	}
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the path of the option
+	*
+	* @return	Path of the option
+	*/
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	* Get the option this handle refers to
+	*
+	* @return	The option
+	*/
+	public T getOption() {
+		if (found != generation.get()) {
+			refresh();
+		}
+		return option;
+	}
+
+	/**
+	* Look for the option again after options have been added.  The old
+	* option is kept if the path no longer leads to one of the right type.
+	*/
+	private void refresh() {
+		found = generation.get();
+		T current = find(path);
+		if (current != null) {
+			option = current;
+		}
+	}
+
+	//==============
+	// Lookup
+	//==============
+
+	/**
+	* Check if an option can be referred to by this handle
+	*
+	* @param	found	Option found at the path
+	* @return	True if the option is of the right type
+	*/
+	protected boolean accepts(ModOption found) {
+		return type.isInstance(found);
+	}
+
+	/**
+	* Tell handles options have been added, called whenever an option or
+	* mod is registered
+	*/
+	static void invalidate() {
+		// Atomic, so two racing changes never count as one
+		generation.incrementAndGet();
+	}
+
+	/**
+	* Find an option from its path
+	*
+	* @param	path	Path of the option
+	* @return	The option, or null if there is none this handle accepts
+	*/
+	private T find(String path) {
+		ModOption option = ModOptionsRegistry.get(path);
+		if ((option != null) && accepts(option)) {
+			return type.cast(option);
+		}
+		return null;
+	}
+
+	//==============
+	// Handles
+	//==============
+
+	/**
+	* Handle to a boolean option
+	*/
+	public static class BooleanHandle extends ModOptionHandle<ModOptionBoolean> {
+		/**
+		* Find a boolean option
+		*
+		* @throws	IllegalArgumentException	Thrown when there is no boolean option at the path
+		* @param	path	Path of the option
+		*/
+		public BooleanHandle(String path) {
+			super(path, ModOptionBoolean.class);
+		}
+
+		/**
+		* Get the value currently used by the option
+		*
+		* @return	Value of the option
+		*/
+		public boolean get() {
+			return getOption().getBoolean();
+		}
+	}
+
+	/**
+	* Handle to an option holding a whole number, such as a slider
+	*/
+	public static class IntHandle extends ModOptionHandle<ModOptionInt> {
+		/**
+		* Find an int option
+		*
+		* @throws	IllegalArgumentException	Thrown when there is no int option at the path
+		* @param	path	Path of the option
+		*/
+		public IntHandle(String path) {
+			super(path, ModOptionInt.class);
+		}
+
+		/**
+		* Get the value currently used by the option
+		*
+		* @return	Value of the option
+		*/
+		public int get() {
+			return getOption().getInt();
+		}
+	}
+
+	/**
+	* Handle to an option holding text, such as a text or multi option
+	*/
+	public static class StringHandle extends ModOptionHandle<ModOption> {
+		/**
+		* Find a text option
+		*
+		* @throws	IllegalArgumentException	Thrown when there is no text option at the path
+		* @param	path	Path of the option
+		*/
+		public StringHandle(String path) {
+			super(path, ModOption.class);
+		}
+
+		protected boolean accepts(ModOption found) {
+			return !(found instanceof ModOptions) && (found.getValue() instanceof String);
+		}
+
+		/**
+		* Get the value currently used by the option
+		*
+		* @return	Value of the option
+		*/
+		public String get() {
+			return (String)getOption().getValue();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package moapi;
+
+/**
+* Base class for options holding a whole number.  The values are kept as
+* ints so they can be read and set every tick without boxing, the generic
+* value methods remain for code working with any option.
+*
+* @author	Jonathan Brazell
+* @version	1.5
+* @since	1.5
+*/
+abstract public class ModOptionInt extends ModOption<Integer> {
+	/**
+	* Global value of this option
+	*/
+	protected int intValue = 0;
+
+	/**
+	* Local/server value of this option
+	*/
+	protected int localIntValue = 0;
+
+	/**
+	* Value in use, kept as an int alongside the boxed value
+	*/
+	private int effectiveInt = 0;
+
+	//==============
+	// Constructors
+	//==============
+
+	/**
+	* Create an option with the given id and name
+	*
+	* @param	id		ID of this option
+	* @param	name	Name of this option
+	*/
+	protected ModOptionInt(String id, String name) {
+		super(id, name);
+		resolve();
+	}
+
+	//==============
+	// Setters
+	//==============
+
+	/**
+	* Set the current value used for the given scope
+	*
+	* @param	value	New value for scope
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations
+	*/
+	public ModOption setInt(int value, boolean scope) {
+		if (scope) {
+			if (intValue == value) {
+				return this;
+			}
+			intValue = value;
+		} else {
+			if (localIntValue == value) {
+				return this;
+			}
+			localIntValue = value;
+		}
+		valueChanged(scope);
+		return this;
+	}
+
+	/**
+	* Set the current value used for the given scope
+	*
+	* @param	value	New value for scope
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations
+	*/
+	public ModOption setValue(Integer value, boolean scope) {
+		return setInt(value, scope);
+	}
+
+	protected void setEffective(Integer value) {
+		super.setEffective(value);
+		effectiveInt = value;
+	}
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the value currently used by this option
+	*
+	* @return	Value of this option
+	*/
+	public int getInt() {
+		return effectiveInt;
+	}
+
+	/**
+	* Get the value of this option for a scope
+	*
+	* @param	scope	True for global value
+	* @return	Value of this option in the given scope
+	*/
+	public int getInt(boolean scope) {
+		return (scope) ? intValue : localIntValue;
+	}
+
+	/**
+	* Returns the global value of this option
+	*
+	* @return	Global value of this option
+	*/
+	public Integer getGlobalValue() {
+		return intValue;
+	}
+
+	/**
+	* Get the local value
+	*
+	* @return	Local value of this option
+	*/
+	public Integer getLocalValue() {
+		return localIntValue;
+	}
+}
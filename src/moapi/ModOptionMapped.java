@@ -10,11 +10,48 @@ import java.util.*;
 * @version	1.0.0
 * @since	0.7
 */
-public class ModOptionMapped extends ModOption<Integer> {
+public class ModOptionMapped extends ModOptionInt {
 	/**
-	* Collection of possible values of this selector
+	* Keys of the possible values of this selector, in the order added
+	*
+	* @since	1.5
+	*/
+	private int[] keys = new int[4];
+
+	/**
+	* Labels of the possible values, by position
+	*
+	* @since	1.5
+	*/
+	private String[] labels = new String[4];
+
+	/**
+	* Number of possible values
+	*
+	* @since	1.5
+	*/
+	private int count = 0;
+
+	/**
+	* Position of each key
+	*
+	* @since	1.5
+	*/
+	private Ordinals ordinals = new Ordinals();
+
+	/**
+	* Position of the global value
+	*
+	* @since	1.5
 	*/
-	private LinkedHashMap<Integer, String> values = new LinkedHashMap<Integer, String>();
+	private int ordinal = -1;
+
+	/**
+	* Position of the local value
+	*
+	* @since	1.5
+	*/
+	private int localOrdinal = -1;
 	
 	//==============
 	// Constructors
@@ -75,17 +112,33 @@ public class ModOptionMapped extends ModOption<Integer> {
 	//==============
 	
 	/**
-	* Add a single value to this selector
+	* Add a single value to this selector.  Adding a key again changes its
+	* label.
 	* 
 	* @param	key		Key to add value to
 	* @param	value	Value to add
 	*/
 	public ModOptionMapped addValue(String value, int key) {
-		if (values.size()==0) {
-			this.value = key;
-			localValue = key;
-		} 
-		this.values.put(key, value);
+		int existing = ordinals.get(key);
+		if (existing >= 0) {
+			labels[existing] = value;
+			return this;
+		}
+		if (count == keys.length) {
+			keys = Arrays.copyOf(keys, count * 2);
+			labels = Arrays.copyOf(labels, count * 2);
+		}
+		keys[count] = key;
+		labels[count] = value;
+		ordinals.put(key, count);
+		if (count==0) {
+			intValue = key;
+			localIntValue = key;
+			ordinal = 0;
+			localOrdinal = 0;
+			resolve();
+		}
+		count++;
 		return this;
 	}
 	
@@ -104,6 +157,21 @@ public class ModOptionMapped extends ModOption<Integer> {
     return setValue(Integer.valueOf(strValue), scope);
   }
 
+	/**
+	* Keep the position of the value up to date
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	*/
+	protected void valueChanged(boolean scope) {
+		if (scope) {
+			ordinal = ordinals.get(intValue);
+		} else {
+			localOrdinal = ordinals.get(localIntValue);
+		}
+		super.valueChanged(scope);
+	}
+
 	//==============
 	// Getters
 	//==============
@@ -115,7 +183,8 @@ public class ModOptionMapped extends ModOption<Integer> {
 	* @return	String representation of a value
 	*/
 	public String getStringValue(int key) {
-		return values.get(key);
+		int index = ordinals.get(key);
+		return (index >= 0) ? labels[index] : null;
 	}
 	
 	/**
@@ -129,7 +198,56 @@ public class ModOptionMapped extends ModOption<Integer> {
 		if ((!scope) && (useGlobalValue())) {
 		  return getName() + ": GLOBAL";
 		}
-		return getName() + ": " + getStringValue(getValue(scope));
+		return getName() + ": " + getStringValue(getInt(scope));
+	}
+
+	/**
+	* Get the number of possible values
+	*
+	* @since	1.5
+	* @return	Number of values
+	*/
+	public int getValueCount() {
+		return count;
+	}
+
+	/**
+	* Get the key of a value by its position
+	*
+	* @since	1.5
+	* @param	index	Position of the value, in the order added
+	* @return	Key of the value
+	*/
+	public int getKey(int index) {
+		if ((index < 0) || (index >= count)) {
+			throw new IndexOutOfBoundsException("No value at " + index);
+		}
+		return keys[index];
+	}
+
+	/**
+	* Get the label of a value by its position
+	*
+	* @since	1.5
+	* @param	index	Position of the value, in the order added
+	* @return	Label of the value
+	*/
+	public String getLabel(int index) {
+		if ((index < 0) || (index >= count)) {
+			throw new IndexOutOfBoundsException("No value at " + index);
+		}
+		return labels[index];
+	}
+
+	/**
+	* Get the position of the value in a scope
+	*
+	* @since	1.5
+	* @param	scope	True for global value
+	* @return	Position of the value, -1 if it is not one of the values
+	*/
+	public int getOrdinal(boolean scope) {
+		return (scope) ? ordinal : localOrdinal;
 	}
 	
 	/**
@@ -139,47 +257,104 @@ public class ModOptionMapped extends ModOption<Integer> {
 	* @return	Next value
 	*/
 	public Integer getNextValue(Integer i) {
-		Integer cur			= null;
-		boolean found 		= false;
-		boolean written		= false;
-		// We need the first key due to this being circular
-		boolean firstFound 	= false;
-		Integer firstKey 	= null;
-		
-		// Find next value
-		Set<Map.Entry<Integer, String>> s = values.entrySet();
-		for(Map.Entry<Integer, String> entry : s) {
-			// Ensure we have the first key incase of looparouns
-			if(!firstFound) {
-				firstKey = entry.getKey();
-				firstFound = true;
-			}
-			if(!written) {
-				if(found) {
-					cur 	= entry.getKey();
-					written = true;
-				}
-				if(entry.getKey().equals(i)) {
-					found = true;
-				}
-			}
-		}
-		
-		// Looparound back to first key
-		if(!written) {
-			cur = firstKey;
+		if (i == null) {
+			return (count == 0) ? null : keys[0];
 		}
-		
-		return cur;
+		return getNextValue(i.intValue());
 	}
 	
 	/**
-	* Gets the next value in this selector
+	* Gets the next value in this selector, looping round to the first
 	*
 	* @param	i	Current value
-	* @return	Next value
+	* @return	Next value, the first value if i is not one of the values
 	*/
 	public Integer getNextValue(int i) {
-		return getNextValue(new Integer(i));
+		if (count == 0) {
+			return null;
+		}
+		return keys[(ordinals.get(i) + 1) % count];
+	}
+
+	/**
+	* Gets the previous value in this selector, looping round to the last
+	*
+	* @since	1.5
+	* @param	i	Current value
+	* @return	Previous value, the last value if i is not one of the values
+	*/
+	public Integer getPreviousValue(int i) {
+		if (count == 0) {
+			return null;
+		}
+		int index = ordinals.get(i);
+		return keys[(index <= 0) ? count - 1 : index - 1];
+	}
+
+	/**
+	* Hash table from keys to their positions, holding primitive ints
+	*
+	* @since	1.5
+	*/
+	private static class Ordinals {
+		/** Keys, by slot */
+		private int[] keys = new int[8];
+		/** Position of each key plus one by slot, 0 for an empty slot */
+		private int[] positions = new int[8];
+		/** Number of keys */
+		private int size = 0;
+
+		/**
+		* Get the position of a key
+		*
+		* @param	key	Key to find
+		* @return	Position of the key, -1 if it was never added
+		*/
+		private int get(int key) {
+			int mask = keys.length - 1;
+			for (int slot = hash(key) & mask; positions[slot] != 0; slot = (slot + 1) & mask) {
+				if (keys[slot] == key) {
+					return positions[slot] - 1;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		* Add a key that is not in the table
+		*
+		* @param	key				Key to add
+		* @param	position	Position of the key
+		*/
+		private void put(int key, int position) {
+			if ((size + 1) * 2 > keys.length) {
+				int[] oldKeys = keys;
+				int[] oldPositions = positions;
+				keys = new int[oldKeys.length * 2];
+				positions = new int[oldKeys.length * 2];
+				for (int x = 0; x < oldKeys.length; x++) {
+					if (oldPositions[x] != 0) {
+						insert(oldKeys[x], oldPositions[x]);
+					}
+				}
+			}
+			insert(key, position + 1);
+			size++;
+		}
+
+		private void insert(int key, int position) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (positions[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			positions[slot] = position;
+		}
+
+		private static int hash(int key) {
+			int hash = key * 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
 	}
 }
@@ -1,6 +1,6 @@
 package moapi;
 
-import java.util.LinkedList;
+import java.util.*;
 
 /**
 * Multiple Selector API
@@ -12,9 +12,44 @@ import java.util.LinkedList;
 */
 public class ModOptionMulti extends ModOption<String> {
 	/**
-	* Collection of possible values of this selector
+	* Possible values of this selector, in the order added
 	*/
-	private LinkedList<String> values = new LinkedList<String>();
+	private String[] values = new String[4];
+
+	/**
+	* Number of possible values
+	*
+	* @since	1.5
+	*/
+	private int count = 0;
+
+	/**
+	* Position of each value, the first one added if it was added twice
+	*
+	* @since	1.5
+	*/
+	private HashMap<String, Integer> ordinals = new HashMap<String, Integer>();
+
+	/**
+	* Position of the global value
+	*
+	* @since	1.5
+	*/
+	private int ordinal = -1;
+
+	/**
+	* Position of the local value
+	*
+	* @since	1.5
+	*/
+	private int localOrdinal = -1;
+
+	/**
+	* Position being set by setValueAt, -1 otherwise
+	*
+	* @since	1.5
+	*/
+	private int chosen = -1;
 	
 	//==============
 	// Constructors
@@ -81,6 +116,67 @@ public class ModOptionMulti extends ModOption<String> {
     return setValue(strValue, scope);
   }
 
+	/**
+	* Set the value of a scope by its position, so a value added more than
+	* once can be told apart from its first copy
+	*
+	* @since	1.5
+	* @param	index	Position of the value, in the order added
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations
+	*/
+	public ModOption setValueAt(int index, boolean scope) {
+		String s = getValueAt(index);
+		chosen = index;
+		try {
+			setValue(s, scope);
+		} finally {
+			chosen = -1;
+		}
+		// Not seen as a change when the same value follows itself
+		if (getValue(scope) == s) {
+			if (scope) {
+				ordinal = index;
+			} else {
+				localOrdinal = index;
+			}
+		}
+		return this;
+	}
+
+	/**
+	* Move the value of a scope on to the next position, looping round to
+	* the first.  Values added more than once are each reached in turn.
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations
+	*/
+	public ModOption selectNext(boolean scope) {
+		if (count == 0) {
+			return this;
+		}
+		return setValueAt((Math.max(0, getOrdinal(scope)) + 1) % count, scope);
+	}
+
+	/**
+	* Keep the position of the value up to date.  Values set as a string
+	* are looked up, taking the first position they were added at.
+	*
+	* @since	1.5
+	* @param	scope	Scope value. True for global
+	*/
+	protected void valueChanged(boolean scope) {
+		String current = (scope) ? value : localValue;
+		int index = ((chosen >= 0) && (values[chosen] == current)) ? chosen : indexOf(current);
+		if (scope) {
+			ordinal = index;
+		} else {
+			localOrdinal = index;
+		}
+		super.valueChanged(scope);
+	}
+
 	//==============
 	// Adders
 	//==============
@@ -91,11 +187,20 @@ public class ModOptionMulti extends ModOption<String> {
 	* @param	value	Value to add
 	*/
 	public ModOptionMulti addValue(String value) {
-		if (values.size()==0) {
+		if (count==0) {
 			this.value = value;
 			this.localValue = value;
+			ordinal = 0;
+			localOrdinal = 0;
+			resolve();
 		}
-		this.values.add(value);
+		if (count == values.length) {
+			values = Arrays.copyOf(values, count * 2);
+		}
+		if (!ordinals.containsKey(value)) {
+			ordinals.put(value, count);
+		}
+		values[count++] = value;
 		return this;
 	}
 	
@@ -107,15 +212,90 @@ public class ModOptionMulti extends ModOption<String> {
 	* Gets the next value in this selector
 	*
 	* @param	s	Current value
-	* @return	Next value
+	* @return	Next value, the second value if s is not one of the values, or null if there are none
 	*/
 	public String getNextValue(String s) {
-		int index = 0;
-		for(int x = 0; x < values.size(); x++) {
-			if(values.get(x).equals(s)) {
-				index = x;
-			}
+		if (count == 0) {
+			return null;
+		}
+		return values[(Math.max(0, findIndex(s)) + 1) % count];
+	}
+
+	/**
+	* Gets the previous value in this selector, looping round to the last
+	*
+	* @since	1.5
+	* @param	s	Current value
+	* @return	Previous value, the last value if s is not one of the values, or null if there are none
+	*/
+	public String getPreviousValue(String s) {
+		if (count == 0) {
+			return null;
+		}
+		int index = findIndex(s);
+		return values[(index <= 0) ? count - 1 : index - 1];
+	}
+
+	/**
+	* Get the number of possible values
+	*
+	* @since	1.5
+	* @return	Number of values
+	*/
+	public int getValueCount() {
+		return count;
+	}
+
+	/**
+	* Get a value by its position
+	*
+	* @since	1.5
+	* @param	index	Position of the value, in the order added
+	* @return	The value
+	*/
+	public String getValueAt(int index) {
+		if ((index < 0) || (index >= count)) {
+			throw new IndexOutOfBoundsException("No value at " + index);
+		}
+		return values[index];
+	}
+
+	/**
+	* Get the position of the value in a scope
+	*
+	* @since	1.5
+	* @param	scope	True for global value
+	* @return	Position of the value, -1 if it is not one of the values
+	*/
+	public int getOrdinal(boolean scope) {
+		return (scope) ? ordinal : localOrdinal;
+	}
+
+	/**
+	* Get the position of a value
+	*
+	* @since	1.5
+	* @param	s	Value to find
+	* @return	Position of the first such value, -1 if it is not one of the values
+	*/
+	public int indexOf(String s) {
+		Integer index = ordinals.get(s);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	* Get the position of a value being cycled from, using the position
+	* already known if it is the value of either scope
+	*
+	* @param	s	Current value
+	* @return	Position of the value, -1 if it is not one of the values
+	*/
+	private int findIndex(String s) {
+		if ((localOrdinal >= 0) && (s == localValue)) {
+			return localOrdinal;
+		} else if ((ordinal >= 0) && (s == value)) {
+			return ordinal;
 		}
-		return values.get((index + 1) % values.size());
+		return indexOf(s);
 	}
 }
\ No newline at end of file
@@ -8,7 +8,7 @@ package moapi;
 * @version	1.0.0
 * @since	0.1
 */
-public class ModOptionSlider extends ModOption<Integer> {
+public class ModOptionSlider extends ModOptionInt {
 	/**
 	* Lowest value of slider
 	*/
@@ -31,8 +31,9 @@ public class ModOptionSlider extends ModOption<Integer> {
 	*/
 	public ModOptionSlider(String id, String name) {
 		super(id, name);
-		value = 1;
-		localValue = 1;
+		intValue = 1;
+		localIntValue = 1;
+		resolve();
 	}
 	
 	/**
@@ -119,7 +120,7 @@ public class ModOptionSlider extends ModOption<Integer> {
 	* @param	value	Value being set
 	*/
 	public ModOption setValue(int value) {
-		return super.setValue(getBoundedValue(value, low, high));
+		return setInt(getBoundedValue(value, low, high), useGlobalValue());
 	}
 	
 	/**
@@ -130,7 +131,7 @@ public class ModOptionSlider extends ModOption<Integer> {
 	* @return  the option for further operations  	
 	*/
 	public ModOption setValue(int value, boolean scope) {
-		return super.setValue(getBoundedValue(value, low, high), scope);
+		return setInt(getBoundedValue(value, low, high), scope);
 	}
 	
 	/**
@@ -1,7 +1,9 @@
 package moapi;
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 import net.minecraft.server.*;
 
@@ -14,9 +16,6 @@ import net.minecraft.server.*;
 * @since    0.1
 */
 public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
-	/** Parent of this set of options (null implies it's a mod package)	*/
-	private ModOptions parent = null;
-
 	/**
 	* Whether this set of options is client specific, rendering, etc.
 	* @note If set false, all children will act as false
@@ -36,6 +35,45 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @since	1.5
 	*/
 	protected Object externalCommand = null; 
+
+	/**
+	* Saved text of the options directly in this menu, kept until one of
+	* them changes.  Index 0 is the local text, 1 the global text.
+	*
+	* @since	1.5
+	*/
+	private String[] sectionText = new String[2];
+
+	/**
+	* Registered sections and options of this mod, for the buffered reader.
+	* Built when first needed, dropped when an option is added.
+	*
+	* @since	1.5
+	*/
+	private ModOptionsBufferedReader.Names names = null;
+
+	/**
+	* True while values are being loaded into this menu
+	*
+	* @since	1.5
+	*/
+	private boolean loading = false;
+
+	/**
+	* World the local values were last loaded or saved for, null if none.
+	* Local values are only clean for this world.
+	*
+	* @since	1.5
+	*/
+	private volatile String localWorld = null;
+
+	/**
+	* Options of this menu, split by where they are used.  Built when first
+	* needed, dropped when an option is added.
+	*
+	* @since	1.5
+	*/
+	private volatile Children children = null;
 	
 
 	//=========================
@@ -57,6 +95,7 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 			throw new PatternSyntaxException("(ModOptions) Please do not use special characters for ID","",0);
 		}
 		value = new LinkedHashMap<String, ModOption>();
+		resolve();
 	}
 
 	/**
@@ -80,7 +119,18 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @return	Returns the option just added for further operations
 	*/
 	public ModOption addOption(ModOption option) {
-		value.put(option.getID(), option);
+		ModOption old = value.put(option.getID(), option);
+		option.setParent(this);
+		ModOptionsRegistry.optionAdded(this, option, old);
+		sectionText[0] = null;
+		sectionText[1] = null;
+		for (ModOptions menu = this; menu != null; menu = menu.getParent()) {
+			menu.names = null;
+		}
+		children = null;
+		ModOptionHandle.invalidate();
+		markDirty(true);
+		markDirty(false);
 		return option;
 	}
 	
@@ -290,7 +340,7 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @return	Value of a boolean option
 	*/
 	public boolean getBooleanValue(String id) {
-    return ((ModOptionBoolean)value.get(id)).getValue();
+    return ((ModOptionBoolean)value.get(id)).getBoolean();
 	}
 	
 	/**
@@ -300,7 +350,7 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @return	Value of a slider option
 	*/
 	public int getSliderValue(String id) {
-    return ((ModOptionSlider)value.get(id)).getValue();
+    return ((ModOptionSlider)value.get(id)).getInt();
 	}
 	
 	/**
@@ -310,72 +360,101 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @return	Value of a mapped multi option
 	*/
 	public int getMappedValue(String id) {
-		return ((ModOptionMapped)value.get(id)).getValue();
+		return ((ModOptionMapped)value.get(id)).getInt();
 	}
 	
 	/**
-	* Return all option selectors for this menu
+	* Return all option selectors for this menu.  The array is shared and
+	* must not be modified.
 	*
 	* @return	Array of all option selectors for this menu
 	*/
 	public ModOption[] getOptions() {
-    return value.values().toArray(new ModOption[value.size()]);
+    return getChildren().all;
 	}
 
 	/**
-	* Return all client option selectors for this menu
+	* Return all client option selectors for this menu.  The array is shared
+	* and must not be modified.
 	*
 	* @return	Array of all client option selectors for this menu
 	*/
 	public ModOption[] getClientOptions() {
-    ArrayList<ModOption> options = new ArrayList<ModOption>();
-    
-    for (ModOption option : getOptions()) {
-      if (option instanceof ModOptions) {
-        if (((ModOptions)option).isClientMode())
-          options.add(option);
-      } else {
-        options.add(option);
-      }
-    }
-    return options.toArray(new ModOption[options.size()]);
+    return getChildren().client;
 	}
 
 	/**
-	* Return all server option selectors for this menu
+	* Return all server option selectors for this menu.  The array is shared
+	* and must not be modified.
 	*
 	* @return	Array of all server option selectors for this menu
 	*/
 	public ModOption[] getServerOptions() {
-    ArrayList<ModOption> options = new ArrayList<ModOption>();
-    
-    for (ModOption option : getOptions()) {
-      if (option instanceof ModOptions) {
-        if (!((ModOptions)option).isClientMode())
-          options.add(option);
-      } else {
-        options.add(option);
-      }
-    }
-    return options.toArray(new ModOption[options.size()]);
+    return getChildren().server;
 	}
 
 	/**
-	* Get all sets of sub-options for this set
+	* Get all sets of sub-options for this set.  The array is shared and
+	* must not be modified.
 	*
 	* return	Array of all sub options for this set
 	*/
 	public ModOptions[] getSubOptions() {
-    ArrayList<ModOptions> subOptions = new ArrayList<ModOptions>();
-    
-    for (ModOption option : getOptions()) {
-      if (option instanceof ModOptions) {
-        subOptions.add((ModOptions)option);
-      }
-    }
-    return subOptions.toArray(new ModOptions[subOptions.size()]);
+    return getChildren().sub;
+	}
+
+	/**
+	* Get the options of this menu, splitting them up if not done since
+	* the last option was added
+	*
+	* @since	1.5
+	* @return	Options of this menu
+	*/
+	private Children getChildren() {
+		Children current = children;
+		if (current == null) {
+			current = new Children(value.values().toArray(new ModOption[value.size()]));
+			children = current;
+		}
+		return current;
 	}
 	
+	/**
+	* Called when an option in this menu, or in a sub menu, needs saving
+	*
+	* @since	1.5
+	* @param	option	Option that changed
+	* @param	scope		Scope value. True for global
+	*/
+	protected void childChanged(ModOption option, boolean scope) {
+		if (!(option instanceof ModOptions)) {
+			sectionChanged(scope);
+		}
+		if (!isDirty(scope)) {
+			markDirty(scope);
+		}
+	}
+
+	/**
+	* Called when an option in this menu has changed, so its saved text
+	* needs rebuilding
+	*
+	* @since	1.5
+	* @param	scope		Scope value. True for global
+	*/
+	protected void sectionChanged(boolean scope) {
+		sectionText[(scope) ? 1 : 0] = null;
+	}
+
+	/**
+	* Check if values are being loaded into this menu
+	*
+	* @since	1.5
+	* @return	True while loading this menu or one it belongs to
+	*/
+	public boolean isLoading() {
+		return loading || ((parent != null) && parent.isLoading());
+	}
 	/**
 	* Get parent for this sub menu
 	*
@@ -406,7 +485,8 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @return	This object for building
 	*/
 	public ModOptions setParent(ModOptions parent) {
-		this.parent = parent;
+		// Listeners on the old and new parents now cover this menu differently
+		super.setParent(parent);
 		return this;
 	}
 
@@ -426,6 +506,11 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	*/
 	public ModOptions setClientMode() {
 		client = true;
+		if (parent != null) {
+			parent.children = null;
+		} else {
+			ModOptionsAPI.modsChanged();
+		}
 		return this;
 	}
 
@@ -436,6 +521,11 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	*/
 	public ModOptions setServerMode() {
 		client = false;
+		if (parent != null) {
+			parent.children = null;
+		} else {
+			ModOptionsAPI.modsChanged();
+		}
 		return this;
 	}
 	
@@ -457,29 +547,44 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	*
 	* @param name  worldname, blank string for global options
 	*/
-	private File getFile(String worldName) {
-    // Set folder
-		String folderName = "";
-    if (ModOptionsAPI.isServer()) {
-      folderName = ModOptionsAPI.getMinecraftFolder() + worldName + "/";
-    } else if (worldName.length()==0) { // Global
-      folderName = ModOptionsAPI.getMinecraftFolder() + "config/";
-    } else { // Local
-      folderName = ModOptionsAPI.getMinecraftFolder() + "saves/" + MinecraftServer.getServer().getFolderName() + "/";
-    }
-		// Ensure folder exists
-		File dir = new File(folderName);
-		if (!dir.exists()) {
-			dir.mkdirs();
+	File getFile(String worldName) {
+		return getPath(worldName).toFile();
+	}
+
+	/**
+	* Get path of the file associated with this set of options
+	*
+	* @param	worldName	worldname, blank string for global options
+	* @return	Path of the top level mod's .moapi file
+	* @since	1.5
+	*/
+	public Path getPath(String worldName) {
+		return ModOptionsPaths.getFile(getTopLevel().getID(), worldName);
+	}
+
+	/**
+	* Get the registered sections and options of this menu and its sub menus
+	*
+	* @return	Names to match against an options file
+	* @since	1.5
+	*/
+	ModOptionsBufferedReader.Names getNames() {
+		if (names == null) {
+			names = new ModOptionsBufferedReader.Names(this);
 		}
-    // Set filename (top level mod name)
-    String modName = "";
-		ModOptions p = this;
-		while (p.getParent() != null) {
-			p = p.getParent();
+		return names;
+	}
+
+	/**
+	* Get the name of the section this set of options is stored under
+	*
+	* @return	Section name, without brackets
+	*/
+	protected String getSectionName() {
+		if (parent==null) {
+			return ModOptionsIndex.TOPLEVEL;
 		}
-    modName = p.getID();
-		return new File(folderName + modName + ".moapi");
+		return getName();
 	}
 
 	/**
@@ -490,49 +595,130 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @return	This object for building
 	*/
   public ModOptions loadValues(String worldName) {
-		String line;
-		// Also load all children
-		for (ModOptions child : this.getSubOptions()) {
-			child.loadValues(worldName);
+		ModOptionsIndex index = readValues(worldName);
+		if (index != null) {
+			applyValues(index, worldName);
 		}
-		File file = getFile(worldName);
-		String section="[" + getName() + "]";
-		if (parent==null) {
-		  section = "[toplevel]";
+    return this;
+  }
+
+	/**
+	* Reads the values for this menu from disk without applying them.
+	* Touches no option, so it may be called from any thread.
+	*
+	* @param	worldName	Name of world/ server to load for
+	* @return	Contents of the options file, or null if it could not be read
+	* @since	1.5
+	*/
+	protected ModOptionsIndex readValues(String worldName) {
+		try {
+			return ModOptionsAPI.getStore().read(this, worldName);
+		} catch (IOException e) {
+			System.out.println("(ModOptionsAPI): IOException occured: " + e.getMessage());
+			return null;
 		}
+	}
+
+	/**
+	* Applies values read by readValues to this and all sub-menus.
+	* Option callbacks are called on the calling thread.
+	*
+	* @param	index			Contents of the options file
+	* @param	worldName	Name of world/ server the values were read for
+	* @since	1.5
+	*/
+	protected void applyValues(ModOptionsIndex index, String worldName) {
+		applyValues(index, worldName, false);
+	}
+
+	/**
+	* Applies values read by readValues to this and all sub-menus
+	*
+	* @param	index				Contents of the options file
+	* @param	worldName		Name of world/ server the values were read for
+	* @param	changesOnly	True to leave options whose value is the same as the file alone,
+	*										so their callbacks are not called
+	* @since	1.5
+	*/
+	protected void applyValues(ModOptionsIndex index, String worldName, boolean changesOnly) {
+		loading = true;
+		// Listeners hear of the whole load at once
+		ModOptionsEvents.startBulk();
 		try {
-			BufferedReader reader 	= new BufferedReader(new FileReader(file));
-			HashMap map 			= new HashMap<String, String>();
-			while ((line = reader.readLine()) != null) {
-			  if (section.compareTo(line)==0)
-			    break;
+			loadValues(index, worldName.length()==0, changesOnly);
+			if (worldName.length() > 0) {
+				localWorld = worldName;
 			}
-			while((line = reader.readLine()) != null) {
-        if (line.charAt(0)=='[')
-          break;
-				String[] 	parts 	= line.split(":", 2);
-				String 		id 		= parts[0];
-				String 		value 	= parts[1].replace(":", "");
-				map.put(id, value);
+		} finally {
+			loading = false;
+			ModOptionsEvents.endBulk();
+		}
+		if (getParent() == null) {
+			ModOptionsWatcher.track(this, worldName);
+		}
+	}
+
+	/**
+	* Applies values from an already read file to this
+	* and all sub-menus
+	*
+	* @param	index		Contents of the options file
+	* @param	global	True if the values are global values
+	* @return	True if this menu and its sub-menus match the file
+	*/
+	protected boolean loadValues(ModOptionsIndex index, boolean global) {
+		return loadValues(index, global, false);
+	}
+
+	/**
+	* Applies values from an already read file to this
+	* and all sub-menus
+	*
+	* @param	index				Contents of the options file
+	* @param	global			True if the values are global values
+	* @param	changesOnly	True to only set options whose value differs from the file
+	* @return	True if this menu and its sub-menus match the file
+	* @since	1.5
+	*/
+	protected boolean loadValues(ModOptionsIndex index, boolean global, boolean changesOnly) {
+		boolean clean = true;
+		// Also load all children
+		for (ModOptions child : this.getSubOptions()) {
+			if (!child.loadValues(index, global, changesOnly)) {
+				clean = false;
 			}
-			boolean global = (worldName.length()==0);
-			for (ModOption option : getOptions()) {
-        if (map.containsKey(option.getID())) {
-          String val = (String)map.get(option.getID());
-          try {
-            option.fromString(val, global);
-          } catch (Exception ignored) {}
-          // Turn off global default for this option if set local
-					option.setGlobal(global);
-        }
+		}
+		Map<String, Object> map = index.getSection(getSectionName());
+		for (ModOption option : getOptions()) {
+			if (option instanceof ModOptions) {
+				continue;
+			}
+			Object val = map.get(option.getID());
+			boolean loaded = false;
+			if (val != null) {
+				try {
+					// When only applying changes an equal value is left alone
+					if (!changesOnly || !String.valueOf(option.getValue(global)).equals(val.toString())) {
+						option.fromObject(val, global);
+					}
+					loaded = true;
+				} catch (Exception ignored) {}
+				// Turn off global default for this option if set local
+				option.setGlobal(global);
+			}
+			// Matches the file if read from it, or if it would not be written to it
+			if (loaded || (!global && option.useGlobalValue())) {
+				option.clearDirty(global);
+			} else {
+				option.markDirty(global);
+				clean = false;
 			}
-		} catch (FileNotFoundException e) {
-			// Ignore, this is expected
-		} catch (IOException e) {
-			System.out.println("(ModOptionsAPI): IOException occured: " + e.getMessage());
 		}
-    return this;
-  }
+		if (clean) {
+			clearDirty(global);
+		}
+		return clean;
+	}
 
   public ModOptions loadValues() {
 	  if (ModOptionsAPI.isServer())
@@ -540,6 +726,32 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	  return loadValues("");
   }
 
+	/**
+	* Starts loading values from disk without waiting for them.  On the
+	* client the values are applied, and callbacks called, on the game
+	* thread.
+	*
+	* @param	worldName	Name of world/ server to load for
+	* @return	Completed with this object once the values are applied
+	* @since	1.5
+	*/
+	public Future<ModOptions> loadValuesAsync(String worldName) {
+		return ModOptionsLoader.loadAsync(this, worldName);
+	}
+
+	/**
+	* Starts loading values from disk for the current scope without
+	* waiting for them
+	*
+	* @return	Completed with this object once the values are applied
+	* @since	1.5
+	*/
+	public Future<ModOptions> loadValuesAsync() {
+		if (ModOptionsAPI.isServer())
+			return loadValuesAsync(ModOptionsAPI.getWorldName());
+		return loadValuesAsync("");
+	}
+
 	/**
 	* Save options to disk for a particular world or global
 	*
@@ -552,39 +764,141 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 		  getParent().saveValues(worldName);
 		  return this;
 	  }	
-	  boolean global = (worldName.length()==0);
-	  // Delete old file, write new
-	  File file = getFile(worldName);
-	  file.delete();
-	  try {
-		  PrintWriter printwriter = new PrintWriter(new FileWriter(file));
-		  printwriter.println("[toplevel]");
-		  this.saveValues(printwriter, global);
-		  printwriter.close();
-	  } catch (IOException e) {
-		  System.err.println("(ModOptionsAPI): Could not save options to " + name);
+	  final boolean global = (worldName.length()==0);
+	  // Nothing has changed since this scope was last saved or loaded for this world
+	  if (!isDirty(global) && (global || worldName.equals(localWorld))) {
+		  return this;
 	  }
+	  // Flagged saved first, so a write failing straight away is not lost
+	  markSaved(global);
+	  if (!global) {
+		  localWorld = worldName;
+	  }
+	  // Values are taken here, the store may write them later
+	  ModOptionsAPI.getStore().save(this, worldName, new Runnable() {
+		  public void run() {
+			  // Write failed, try again on the next save
+			  markDirty(global);
+		  }
+	  });
 	  return this;
   }
 
+	/**
+	* Build the contents of this mod's .moapi file, in the configured format
+	*
+	* @param	global	True for global values
+	* @return	Contents of the file
+	* @since	1.5
+	*/
+	byte[] toBytes(boolean global) {
+		if (ModOptionsConfig.useBinaryFormat()) {
+			ModOptionsIndex index = new ModOptionsIndex();
+			this.saveValues(index, global);
+			return ModOptionsBinary.write(index);
+		}
+		StringWriter buffer = new StringWriter();
+		PrintWriter printwriter = new PrintWriter(buffer);
+		printwriter.println("[" + ModOptionsIndex.TOPLEVEL + "]");
+		this.saveValues(printwriter, global);
+		printwriter.close();
+		return buffer.toString().getBytes();
+	}
+
   public ModOptions saveValues() {
 	  if (ModOptionsAPI.isServer())
 		  return saveValues(ModOptionsAPI.getWorldName());
 	  return saveValues("");
   }
 
+	/**
+	* Save options to disk, returning a future which completes once the
+	* file has been written
+	*
+	* @param	worldName	worldname, blank for global
+	* @return	Completed with this object once the values are on disk
+	* @since	1.5
+	*/
+	public Future<ModOptions> saveValuesAsync(String worldName) {
+		saveValues(worldName);
+		return ModOptionsWriter.whenWritten(this, worldName);
+	}
+
+	/**
+	* Save options for the current scope, returning a future which
+	* completes once the file has been written
+	*
+	* @return	Completed with this object once the values are on disk
+	* @since	1.5
+	*/
+	public Future<ModOptions> saveValuesAsync() {
+		if (ModOptionsAPI.isServer())
+			return saveValuesAsync(ModOptionsAPI.getWorldName());
+		return saveValuesAsync("");
+	}
+
   protected void saveValues(PrintWriter printwriter, boolean global) {
-	  for (ModOption option : this.getOptions()) {
-	    if (!(option instanceof ModOptions)) {
-	      if (global || !option.useGlobalValue())
-    		  printwriter.println(option.getID().replace(":", "") + ":" + option.getValue(global).toString());
-	    }
+	  int idx = (global) ? 1 : 0;
+	  // Only rebuild the text of sections that have changed
+	  if (sectionText[idx] == null) {
+		  StringWriter buffer = new StringWriter();
+		  PrintWriter section = new PrintWriter(buffer);
+		  for (ModOption option : this.getOptions()) {
+		    if (!(option instanceof ModOptions)) {
+		      if (global || !option.useGlobalValue())
+	    		  section.println(option.getID().replace(":", "") + ":" + option.getValue(global).toString());
+		    }
+		  }
+		  section.close();
+		  sectionText[idx] = buffer.toString();
 	  }
+	  printwriter.print(sectionText[idx]);
 	  for (ModOptions child : this.getSubOptions()) {
 			printwriter.println("[" + child.getName() + "]");
 		  child.saveValues(printwriter, global);
 	  }
   }
+
+	/**
+	* Add the values of this menu and its sub menus to an index
+	*
+	* @since	1.5
+	* @param	index		Index to fill
+	* @param	global	True for global values
+	*/
+	protected void saveValues(ModOptionsIndex index, boolean global) {
+		Map<String, Object> section = index.startSection(getSectionName());
+		if (section != null) {
+			for (ModOption option : this.getOptions()) {
+				if (!(option instanceof ModOptions) && (global || !option.useGlobalValue())) {
+					section.put(option.getID().replace(":", ""), option.getValue(global));
+				}
+			}
+		}
+		for (ModOptions child : this.getSubOptions()) {
+			child.saveValues(index, global);
+		}
+	}
+
+	/**
+	* Flag this menu and everything changed below it as saved
+	*
+	* @since	1.5
+	* @param	global	True if the global values were saved
+	*/
+	protected void markSaved(boolean global) {
+		if (!isDirty(global)) {
+			return;
+		}
+		for (ModOption option : getOptions()) {
+			if (option instanceof ModOptions) {
+				((ModOptions)option).markSaved(global);
+			} else {
+				option.clearDirty(global);
+			}
+		}
+		clearDirty(global);
+	}
   
 	/**
 	* Sets all values global values to the parameter
@@ -592,11 +906,56 @@ public class ModOptions extends ModOption<LinkedHashMap<String, ModOption>> {
 	* @param	global	New value
 	*/
 	public void globalReset(boolean global) {
-		for(ModOption option : getOptions()) {
-		  if (option instanceof ModOptions)
-	      ((ModOptions)option).globalReset(global);
-      else		  
-			  option.setGlobal(global);
+		// Published as one snapshot
+		ModOptionsEvents.startBulk();
+		try {
+			for(ModOption option : getOptions()) {
+			  if (option instanceof ModOptions)
+		      ((ModOptions)option).globalReset(global);
+	      else		  
+				  option.setGlobal(global);
+			}
+		} finally {
+			ModOptionsEvents.endBulk();
+		}
+	}
+
+	/**
+	* Options of a menu, split by where they are used
+	*
+	* @since	1.5
+	*/
+	private static class Children {
+		/** Every option, in the order added */
+		private final ModOption[] all;
+		/** Options shown in client menus */
+		private final ModOption[] client;
+		/** Options shown in server menus */
+		private final ModOption[] server;
+		/** Sub menus */
+		private final ModOptions[] sub;
+
+		private Children(ModOption[] all) {
+			ArrayList<ModOption> client = new ArrayList<ModOption>();
+			ArrayList<ModOption> server = new ArrayList<ModOption>();
+			ArrayList<ModOptions> sub = new ArrayList<ModOptions>();
+			for (ModOption option : all) {
+				if (option instanceof ModOptions) {
+					sub.add((ModOptions)option);
+					if (((ModOptions)option).isClientMode()) {
+						client.add(option);
+					} else {
+						server.add(option);
+					}
+				} else {
+					client.add(option);
+					server.add(option);
+				}
+			}
+			this.all = all;
+			this.client = client.toArray(new ModOption[client.size()]);
+			this.server = server.toArray(new ModOption[server.size()]);
+			this.sub = sub.toArray(new ModOptions[sub.size()]);
 		}
 	}
 }
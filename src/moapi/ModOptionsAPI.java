@@ -2,6 +2,7 @@ package moapi;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 import net.minecraft.server.*;
 import net.minecraft.src.*;
@@ -20,8 +21,22 @@ public class ModOptionsAPI {
 	private static boolean isServer;
 	/** Stores the World Name, Server Name, or IP address */
 	private static String worldName;
+	/** Dimension options are read for, null for none */
+	private static volatile String dimension = null;
 	/** Stores a list of each mod added with their options */    
-	private static TreeMap<String, ModOptions> modOptions = new TreeMap<String, ModOptions>();
+	private static ConcurrentSkipListMap<String, ModOptions> modOptions = new ConcurrentSkipListMap<String, ModOptions>();
+	/** Mods split into all/server/client, rebuilt after a mod is added */
+	private static volatile ModOptions[][] modLists = null;
+	/** Number of times options have been loaded for a set of mods */
+	private static int loadCount = 0;
+	/** Folder Minecraft is located in, found on first use */
+	private static volatile String minecraftFolder = null;
+	/** Store option values are kept in */
+	private static volatile OptionStore store = null;
+	/** Store setting the store was made for, null if set by a mod */
+	private static String storeType = null;
+	/** Settings version the store setting was read in, -1 if set by a mod */
+	private static volatile int storeVersion = 0;
   
 	private ModOptionsAPI() {
 		try {
@@ -65,13 +80,69 @@ public class ModOptionsAPI {
 		return worldName;
 	}
 
+	/**
+	* Gets the dimension option values are being read for
+	*
+	* @since	1.5
+	* @return	Name of the dimension, null for none
+	*/
+	public static String getDimension() {
+		return dimension;
+	}
+
+	/**
+	* Sets the dimension option values are read for.  Options with a value
+	* for the dimension use it from now on, and their callbacks are told.
+	* Set by the core on the client whenever the player enters a world, to
+	* the name of its dimension (such as "Nether").  A server has players
+	* in many dimensions at once, so it is left for mods to set there.
+	*
+	* @since	1.5
+	* @param	name	Name of the dimension, null for none
+	*/
+	public static synchronized void setDimension(String name) {
+		if ((name == null) ? (dimension == null) : name.equals(dimension)) {
+			return;
+		}
+		dimension = name;
+		ModOptionsEvents.startBulk();
+		try {
+			for (ModOption option : ModOptionsRegistry.getAll("").values()) {
+				option.contextChanged();
+			}
+		} finally {
+			ModOptionsEvents.endBulk();
+		}
+	}
+
+	/**
+	* Clears the server and dimension values of every option, and the
+	* current dimension.  Called when the player moves to another world or
+	* server, as those values only hold for the one they were set in.
+	*
+	* @since	1.5
+	*/
+	public static synchronized void clearScopeValues() {
+		dimension = null;
+		ModOptionsEvents.startBulk();
+		try {
+			for (ModOption option : ModOptionsRegistry.getAll("").values()) {
+				option.clearScopeValues();
+			}
+		} finally {
+			ModOptionsEvents.endBulk();
+		}
+	}
+
 	/**
 	* Adds a mods set of options to a menu in the ModOptions menu. (Add your mod's options here)
 	*
 	* @param	ooptions  A set of options for a mod
 	*/
 	public static void addMod(ModOptions options) {
-		modOptions.put(options.getID(), options);
+		ModOptionsRegistry.modAdded(options, modOptions.put(options.getID(), options));
+		modsChanged();
+		ModOptionHandle.invalidate();
 	}
 
 	/**
@@ -82,7 +153,9 @@ public class ModOptionsAPI {
 	*/
 	public static ModOptions addMod(String id, String name) {
 		ModOptions options = new ModOptions(id, name);
-		modOptions.put(id, options);
+		ModOptionsRegistry.modAdded(options, modOptions.put(id, options));
+		modsChanged();
+		ModOptionHandle.invalidate();
 		return options;
 	}
   
@@ -101,6 +174,19 @@ public class ModOptionsAPI {
 	* @return	Path to the Minecraft folder
 	*/
 	public static String getMinecraftFolder() {
+		// Fixed for the life of the game, so only worked out once
+		if (minecraftFolder == null) {
+			minecraftFolder = findMinecraftFolder();
+		}
+		return minecraftFolder;
+	}
+
+	/**
+	* Works out the folder where Minecraft is located.
+	*
+	* @return	Path to the Minecraft folder
+	*/
+	private static String findMinecraftFolder() {
 		if (isServer()) {
 			try {
 				return (new File(".")).getCanonicalPath() + "/";
@@ -128,6 +214,85 @@ public class ModOptionsAPI {
 		return path;
 	}
 
+	/**
+	* Gets the store option values are kept in.  Unless a mod has set one,
+	* it is chosen by the store setting in config/moapi.properties.
+	*
+	* @return	Store in use
+	* @since	1.5
+	*/
+	public static OptionStore getStore() {
+		// Called on every change, the setting is only read again once the settings change
+		OptionStore current = store;
+		int version = storeVersion;
+		if ((current != null) && ((version < 0) || (version == ModOptionsConfig.getVersion()))) {
+			return current;
+		}
+		return chooseStore();
+	}
+
+	/**
+	* Makes the store chosen by the store setting, unless a mod has set one
+	* or the setting has not changed
+	*
+	* @return	Store in use
+	*/
+	private static synchronized OptionStore chooseStore() {
+		if ((store != null) && (storeVersion < 0)) {
+			return store;
+		}
+		int version = ModOptionsConfig.getVersion();
+		String type = ModOptionsConfig.getString(ModOptionsConfig.STORE, "files").trim().toLowerCase();
+		if ((store == null) || !type.equals(storeType)) {
+			OptionStore old = store;
+			if (type.equals("single")) {
+				store = new SingleFileOptionStore();
+			} else if (type.equals("log")) {
+				store = new LogOptionStore();
+			} else {
+				store = new FileOptionStore();
+			}
+			storeType = type;
+			close(old);
+		}
+		storeVersion = version;
+		return store;
+	}
+
+	/**
+	* Closes a store made from the store setting once it is replaced, so
+	* the next store made for the same file does not find it still open
+	*
+	* @param	old	Store replaced, may be null
+	*/
+	private static void close(OptionStore old) {
+		if (old instanceof Closeable) {
+			try {
+				((Closeable)old).close();
+			} catch (IOException e) {
+				System.err.println("(ModOptionsAPI): Could not close the old option store: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	* Sets the store option values are kept in, in place of the configured one
+	*
+	* @param	optionStore	Store to use, null to go back to the configured store
+	* @since	1.5
+	*/
+	public static synchronized void setStore(OptionStore optionStore) {
+		OptionStore old = store;
+		boolean configured = (storeVersion >= 0);
+		storeVersion = (optionStore == null) ? 0 : -1;
+		store = optionStore;
+		storeType = null;
+		// Stores set by mods are theirs to close
+		if (configured && (old != optionStore)) {
+			close(old);
+		}
+	}
+
 	/**
 	* Loads the option values from disk
 	*
@@ -138,16 +303,99 @@ public class ModOptionsAPI {
 	}
 
 	/**
-	* Loads the options for the selected mods
+	* Loads the options for the selected mods.  Files are read in
+	* parallel, values are applied and callbacks called on this thread.
 	* 	
 	* @param  name  Server/world name to use for loading
 	* @param  mods  array of the mods to load options for     
 	*/
 	public static void loadOptions(String pWorldName, ModOptions[] mods) {
 		worldName = pWorldName;
-		for(ModOptions options : mods) {
-			options.loadValues(worldName);
+		loadCount++;
+		// The folder of a local world can change with the world
+		ModOptionsPaths.invalidate();
+		ModOptionsLoader.load(worldName, mods);
+	}
+
+	/**
+	* Starts loading the options for the selected mods without waiting.
+	* On the client values are applied on the game thread, see applyLoads
+	* and awaitLoads.  Calling get() on a future from the game thread (or
+	* from BaseMod.load(), before the first tick) applies the load right
+	* away instead of waiting for a tick that could never come.
+	*
+	* @param	pWorldName	Server/world name to use for loading
+	* @param	mods				array of the mods to load options for
+	* @return	One future per mod, completed once its values are applied
+	* @since	1.5
+	*/
+	public static List<Future<ModOptions>> loadOptionsAsync(String pWorldName, ModOptions[] mods) {
+		worldName = pWorldName;
+		loadCount++;
+		// The folder of a local world can change with the world
+		ModOptionsPaths.invalidate();
+		List<Future<ModOptions>> loads = new ArrayList<Future<ModOptions>>(mods.length);
+		for (ModOptions options : mods) {
+			loads.add(options.loadValuesAsync(worldName));
 		}
+		return loads;
+	}
+
+	/**
+	* Saves the options for the selected mods without waiting
+	*
+	* @param	pWorldName	Server/world name to save for, blank for global
+	* @param	mods				array of the mods to save options for
+	* @return	One future per mod, completed once its file is written
+	* @since	1.5
+	*/
+	public static List<Future<ModOptions>> saveOptionsAsync(String pWorldName, ModOptions[] mods) {
+		List<Future<ModOptions>> saves = new ArrayList<Future<ModOptions>>(mods.length);
+		for (ModOptions options : mods) {
+			saves.add(options.saveValuesAsync(pWorldName));
+		}
+		return saves;
+	}
+
+	/**
+	* Applies the values of background loads that have been read.  Called
+	* by the core on every tick.
+	*
+	* @return	True if loads are still waiting to be applied
+	* @since	1.5
+	*/
+	public static boolean applyLoads() {
+		return ModOptionsLoader.applyLoads();
+	}
+
+	/**
+	* Sends changes queued for batched callbacks if a batch is due.  Called
+	* by the core on every tick.
+	*
+	* @return	True if changes are still waiting to be sent
+	* @since	1.5
+	*/
+	public static boolean dispatchEvents() {
+		return ModOptionsEvents.dispatch();
+	}
+
+	/**
+	* Waits for every background load started so far and applies its
+	* values.  Called by the core before showing option values.
+	*
+	* @since	1.5
+	*/
+	public static void awaitLoads() {
+		ModOptionsLoader.awaitLoads();
+	}
+
+	/**
+	* Gets the number of times options have been loaded for a set of mods
+	*
+	* @return	Number of bulk option loads since startup
+	*/
+	public static int getLoadCount() {
+		return loadCount;
 	}
 
 	/**
@@ -160,27 +408,61 @@ public class ModOptionsAPI {
 	}
 
 	/**
-	* Gets all mods that have been added
+	* Gets all mods that have been added.  The array is shared and must not
+	* be modified.
 	*
 	* @return	Array of all sets of options for all mods
 	*/
 	public static ModOptions[] getMods(Boolean server) {
-		Set<Map.Entry<String, ModOptions>> options = modOptions.entrySet();
-		List<ModOptions> mods = new ArrayList<ModOptions>();
-    
-		for (Map.Entry<String, ModOptions> entry : options) {
-			if (server==null) { // All Mods
-				mods.add(entry.getValue());
-			} else if (server.booleanValue()) { // Server Mods
-				if (!entry.getValue().isClientMode())
-					mods.add(entry.getValue());
-			} else { // Client Mods
-				if (entry.getValue().isClientMode())
-					mods.add(entry.getValue());
+		ModOptions[][] lists = modLists;
+		if (lists == null) {
+			lists = splitMods();
+		}
+		if (server==null) { // All Mods
+			return lists[0];
+		} else if (server.booleanValue()) { // Server Mods
+			return lists[1];
+		} else { // Client Mods
+			return lists[2];
+		}
+	}
+
+	/**
+	* Splits the mods into all, server and client mods
+	*
+	* @since	1.5
+	* @return	Arrays of all, server and client mods
+	*/
+	private static synchronized ModOptions[][] splitMods() {
+		List<ModOptions> all = new ArrayList<ModOptions>();
+		List<ModOptions> server = new ArrayList<ModOptions>();
+		List<ModOptions> client = new ArrayList<ModOptions>();
+		for (ModOptions mod : modOptions.values()) {
+			all.add(mod);
+			if (mod.isClientMode()) {
+				client.add(mod);
+			} else {
+				server.add(mod);
 			}
 		}
-		ModOptions[] modOptions = mods.toArray(new ModOptions[mods.size()]);
-		return modOptions;
+		ModOptions[][] lists = new ModOptions[][] {
+			all.toArray(new ModOptions[all.size()]),
+			server.toArray(new ModOptions[server.size()]),
+			client.toArray(new ModOptions[client.size()])
+		};
+		modLists = lists;
+		return lists;
+	}
+
+	/**
+	* Rebuilds the lists of mods when next asked for, called when a mod is
+	* added or switches between client and server mode.  Synchronized with
+	* splitMods so lists being built from the old mods are not kept.
+	*
+	* @since	1.5
+	*/
+	static synchronized void modsChanged() {
+		modLists = null;
 	}
 	
 	/**
@@ -219,4 +501,58 @@ public class ModOptionsAPI {
 	public static ModOptions getModOptions(String id) {
 		return modOptions.get(id);
 	}
+
+	/**
+	* Returns the values every registered option is using, as of the last
+	* change.  Safe to call from any thread.
+	*
+	* @since	1.5
+	* @return	Snapshot of every option value
+	*/
+	public static OptionSnapshot getSnapshot() {
+		return OptionSnapshot.get();
+	}
+
+	/**
+	* Adds a listener told of changes to every option of every mod
+	*
+	* @since	1.5
+	* @param	listener	Callback to tell of changes
+	*/
+	public static void addListener(ModOptionCallback listener) {
+		ModOptionsListeners.addGlobal(listener);
+	}
+
+	/**
+	* Removes a listener added for every option
+	*
+	* @since	1.5
+	* @param	listener	Callback to stop telling of changes
+	*/
+	public static void removeListener(ModOptionCallback listener) {
+		ModOptionsListeners.removeGlobal(listener);
+	}
+
+	/**
+	* Returns an option by its full path, such as "mymod/render/distance"
+	*
+	* @since	1.5
+	* @param	path	Mod id, sub menu ids and option id, separated by '/'
+	* @return	The option, or null if there is none at the path
+	*/
+	public static ModOption getOption(String path) {
+		return ModOptionsRegistry.get(path);
+	}
+
+	/**
+	* Returns every option whose full path starts with a prefix, such as
+	* "mymod/render/" for everything in a sub menu
+	*
+	* @since	1.5
+	* @param	prefix	Start of the paths
+	* @return	Read only view of the options by path, in path order
+	*/
+	public static SortedMap<String, ModOption> getOptions(String prefix) {
+		return ModOptionsRegistry.getAll(prefix);
+	}
 }
@@ -0,0 +1,240 @@
+package moapi;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+* Compact binary form of a .moapi file.  The file starts with a magic
+* number and format version, then a table holding every section name, id
+* and text value once, then the sections.  Boolean and integer values are
+* stored as primitives so loading them needs no parsing.
+*
+* <pre>
+* magic    4 bytes "MOAB"
+* version  1 byte
+* strings  int count, then for each: int length, length bytes UTF-8
+* sections int count, then for each:
+*            int name, int entries, then for each entry:
+*              int id, byte type, payload
+* </pre>
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsBinary {
+	/**
+	* First bytes of every binary file.  Text files start with a section
+	* header so the two can never be confused.
+	*/
+	public static final byte[] MAGIC = {'M', 'O', 'A', 'B'};
+
+	/**
+	* Current version of the format
+	*/
+	public static final int VERSION = 2;
+
+	/** Payload is a single byte, 0 or 1 */
+	private static final byte TYPE_BOOLEAN = 1;
+	/** Payload is a 4 byte integer */
+	private static final byte TYPE_INT = 2;
+	/** Payload is an index into the string table */
+	private static final byte TYPE_STRING = 3;
+
+	/** Encoding of the string table */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	//==============
+	// Reading
+	//==============
+
+	/**
+	* Check if the start of a file is a binary options file
+	*
+	* @param	head	First bytes of the file
+	* @param	length	Number of bytes read into head
+	* @return	True if the file is in the binary format
+	*/
+	public static boolean isBinary(byte[] head, int length) {
+		if (length < MAGIC.length) {
+			return false;
+		}
+		for (int x = 0; x < MAGIC.length; x++) {
+			if (head[x] != MAGIC[x]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	* Read a binary options file
+	*
+	* @param	in	Stream positioned at the start of the file
+	* @return	Index of the file contents
+	* @throws	IOException	If the stream fails or the file is not valid
+	*/
+	public static ModOptionsIndex read(DataInputStream in) throws IOException {
+		byte[] head = new byte[MAGIC.length];
+		in.readFully(head);
+		if (!isBinary(head, head.length)) {
+			throw new IOException("Not a binary options file");
+		}
+		int version = in.readUnsignedByte();
+		if (version > VERSION) {
+			throw new IOException("Unsupported options file version " + version);
+		}
+		String[] strings = new String[in.readInt()];
+		for (int x = 0; x < strings.length; x++) {
+			// Version 1 files were limited to short strings
+			strings[x] = (version < 2) ? in.readUTF() : readString(in);
+		}
+		ModOptionsIndex index = new ModOptionsIndex();
+		int sections = in.readInt();
+		for (int x = 0; x < sections; x++) {
+			Map<String, Object> section = index.startSection(getString(strings, in.readInt()));
+			int entries = in.readInt();
+			for (int y = 0; y < entries; y++) {
+				String id = getString(strings, in.readInt());
+				Object value;
+				byte type = in.readByte();
+				switch (type) {
+					case TYPE_BOOLEAN:
+						value = Boolean.valueOf(in.readByte() != 0);
+						break;
+					case TYPE_INT:
+						value = Integer.valueOf(in.readInt());
+						break;
+					case TYPE_STRING:
+						value = getString(strings, in.readInt());
+						break;
+					default:
+						throw new IOException("Unknown value type " + type);
+				}
+				// Duplicate sections are skipped, as in text files
+				if (section != null) {
+					section.put(id, value);
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	* Read a string of any length written by writeString
+	*
+	* @param	in	Stream to read from
+	* @return	The string
+	* @throws	IOException	If the stream fails or the length is not valid
+	*/
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Bad string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	* Look up an entry of the string table
+	*
+	* @param	strings	String table
+	* @param	idx			Index read from the file
+	* @return	String at the index
+	* @throws	IOException	If the index is out of range
+	*/
+	private static String getString(String[] strings, int idx) throws IOException {
+		if ((idx < 0) || (idx >= strings.length)) {
+			throw new IOException("Bad string index " + idx);
+		}
+		return strings[idx];
+	}
+
+	//==============
+	// Writing
+	//==============
+
+	/**
+	* Build a binary options file
+	*
+	* @param	index	Sections and values to write
+	* @return	Contents of the file
+	*/
+	public static byte[] write(ModOptionsIndex index) {
+		try {
+			LinkedHashMap<String, Integer> strings = new LinkedHashMap<String, Integer>();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(body);
+			Set<String> sections = index.getSectionNames();
+			for (String name : sections) {
+				Map<String, Object> section = index.getSection(name);
+				out.writeInt(getIndex(strings, name));
+				out.writeInt(section.size());
+				for (Map.Entry<String, Object> entry : section.entrySet()) {
+					out.writeInt(getIndex(strings, entry.getKey()));
+					Object value = entry.getValue();
+					if (value instanceof Boolean) {
+						out.writeByte(TYPE_BOOLEAN);
+						out.writeByte(((Boolean)value).booleanValue() ? 1 : 0);
+					} else if (value instanceof Integer) {
+						out.writeByte(TYPE_INT);
+						out.writeInt(((Integer)value).intValue());
+					} else {
+						out.writeByte(TYPE_STRING);
+						out.writeInt(getIndex(strings, value.toString()));
+					}
+				}
+			}
+			out.close();
+
+			ByteArrayOutputStream file = new ByteArrayOutputStream(body.size() + 64);
+			DataOutputStream header = new DataOutputStream(file);
+			header.write(MAGIC);
+			header.writeByte(VERSION);
+			header.writeInt(strings.size());
+			for (String string : strings.keySet()) {
+				writeString(header, string);
+			}
+			header.writeInt(sections.size());
+			body.writeTo(header);
+			header.close();
+			return file.toByteArray();
+		} catch (IOException e) {
+			// Only in-memory streams are used
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	* Write a string of any length, unlike writeUTF which is limited to
+	* 65535 bytes
+	*
+	* @param	out			Stream to write to
+	* @param	string	String to write
+	* @throws	IOException	If the stream fails
+	*/
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	* Get the index of a string in the table, adding it if needed
+	*
+	* @param	strings	String table being built
+	* @param	string	String to look up
+	* @return	Index of the string
+	*/
+	private static int getIndex(Map<String, Integer> strings, String string) {
+		Integer idx = strings.get(string);
+		if (idx == null) {
+			idx = strings.size();
+			strings.put(string, idx);
+		}
+		return idx;
+	}
+}
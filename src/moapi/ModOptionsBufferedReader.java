@@ -0,0 +1,346 @@
+package moapi;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+* Reads large text option files in one go into a buffer kept for each
+* thread, and picks out the lines directly from the bytes.  Files are
+* not memory mapped, so they are never left locked against the writer
+* replacing them.  Only the sections and
+* options a mod has registered are decoded, everything else is skipped
+* without creating strings for it.  Small files are read with the usual
+* stream reader, and files in the binary format are handed to it from the
+* buffer already read.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsBufferedReader {
+	/**
+	* Files smaller than this many bytes are read as a stream
+	*/
+	public static final int MIN_SIZE = 16 * 1024;
+
+	/**
+	* Charset option files are written in
+	*/
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	/**
+	* Largest buffer kept for reuse, bigger files get one of their own
+	*/
+	private static final int MAX_KEPT = 1024 * 1024;
+
+	/**
+	* Buffer each reading thread reuses
+	*/
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
+	//==============
+	// Reading
+	//==============
+
+	/**
+	* Read an option file, keeping only registered options
+	*
+	* @param	file	File to read
+	* @param	names	Registered sections and options, null to keep everything
+	* @return	Index of the file contents
+	* @throws	FileNotFoundException	If the file does not exist
+	* @throws	IOException	If the file could not be read
+	*/
+	public static ModOptionsIndex read(File file, Names names) throws IOException {
+		if ((names == null) || (file.length() < MIN_SIZE)) {
+			return ModOptionsIndex.read(file);
+		}
+		ByteBuffer buffer = readFully(file);
+		if (isBinary(buffer)) {
+			return ModOptionsIndex.read(new ByteArrayInputStream(buffer.array(), 0, buffer.limit()));
+		}
+		return parse(buffer, names);
+	}
+
+	/**
+	* Read a whole file into this thread's buffer
+	*
+	* @param	file	File to read
+	* @return	Buffer holding the file, valid until this thread reads another
+	* @throws	FileNotFoundException	If the file does not exist
+	* @throws	IOException	If the file could not be read
+	*/
+	private static ByteBuffer readFully(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file.getName() + " is too large to read");
+			}
+			ByteBuffer buffer = buffers.get();
+			if ((buffer == null) || (buffer.capacity() < size)) {
+				buffer = ByteBuffer.allocate((int)size);
+				if (size <= MAX_KEPT) {
+					buffers.set(buffer);
+				}
+			}
+			buffer.clear();
+			buffer.limit((int)size);
+			while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+				// Keep reading until full or the file ends early
+			}
+			buffer.flip();
+			return buffer;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	* Check if a file is in the binary format
+	*
+	* @param	buffer	File contents
+	* @return	True if the file starts with the binary magic number
+	*/
+	private static boolean isBinary(ByteBuffer buffer) {
+		byte[] head = new byte[Math.min(buffer.limit(), ModOptionsBinary.MAGIC.length)];
+		for (int x = 0; x < head.length; x++) {
+			head[x] = buffer.get(x);
+		}
+		return ModOptionsBinary.isBinary(head, head.length);
+	}
+
+	/**
+	* Index the registered options of a text file.  Lines are read the same
+	* way as ModOptionsIndex.parse.
+	*
+	* @param	buffer	File contents
+	* @param	names		Registered sections and options
+	* @return	Index of the registered options found
+	*/
+	private static ModOptionsIndex parse(ByteBuffer buffer, Names names) {
+		ModOptionsIndex index = new ModOptionsIndex();
+		Map<String, Object> current = null;
+		Table<String> options = null;
+		int limit = buffer.limit();
+		int pos = 0;
+		while (pos < limit) {
+			int end = pos;
+			byte b;
+			while ((end < limit) && ((b = buffer.get(end)) != '\n') && (b != '\r')) {
+				end++;
+			}
+			if (end > pos) {
+				if (buffer.get(pos) == '[') {
+					int nameEnd = (buffer.get(end - 1) == ']') ? end - 1 : end;
+					Section section = names.sections.get(buffer, pos + 1, nameEnd);
+					current = (section == null) ? null : index.startSection(section.name);
+					options = (section == null) ? null : section.options;
+				} else if (current != null) {
+					int sep = pos;
+					while ((sep < end) && (buffer.get(sep) != ':')) {
+						sep++;
+					}
+					if (sep < end) {
+						String id = options.get(buffer, pos, sep);
+						if (id != null) {
+							current.put(id, decodeValue(buffer, sep + 1, end));
+						}
+					}
+				}
+			}
+			pos = end + 1;
+		}
+		return index;
+	}
+
+	/**
+	* Decode a value, dropping any ':' as the stream reader does
+	*
+	* @param	buffer	File contents
+	* @param	start		First byte of the value
+	* @param	end			End of the value, exclusive
+	* @return	The value
+	*/
+	private static String decodeValue(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		int len = 0;
+		for (int x = start; x < end; x++) {
+			byte b = buffer.get(x);
+			if (b != ':') {
+				bytes[len++] = b;
+			}
+		}
+		return new String(bytes, 0, len, CHARSET);
+	}
+
+	//==============
+	// Names
+	//==============
+
+	/**
+	* The sections and options registered for a mod, encoded so they can
+	* be matched against the bytes of a file
+	*/
+	public static class Names {
+		/** Sections by name */
+		private final Table<Section> sections = new Table<Section>();
+
+		/**
+		* Collect the sections and options of a mod
+		*
+		* @param	options	Top level options of the mod
+		*/
+		public Names(ModOptions options) {
+			add(options);
+		}
+
+		/**
+		* Add a menu and its sub menus
+		*
+		* @param	options	Menu to add
+		*/
+		private void add(ModOptions options) {
+			String name = options.getSectionName();
+			Section section = sections.get(name);
+			if (section == null) {
+				section = new Section(name);
+				sections.put(name, section);
+			}
+			for (ModOption option : options.getOptions()) {
+				if (option instanceof ModOptions) {
+					add((ModOptions)option);
+				} else {
+					section.options.put(option.getID(), option.getID());
+				}
+			}
+		}
+	}
+
+	/**
+	* A registered section and its options
+	*/
+	private static class Section {
+		/** Name of the section */
+		private final String name;
+		/** Ids of the options in the section */
+		private final Table<String> options = new Table<String>();
+
+		private Section(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	* Hash table keyed by encoded names, which can be looked up with a
+	* range of bytes without decoding it
+	*/
+	private static class Table<T> {
+		/** Encoded keys, by slot */
+		private byte[][] keys = new byte[16][];
+		/** Values, by slot */
+		private Object[] values = new Object[16];
+		/** Number of keys */
+		private int size = 0;
+
+		/**
+		* Look up a name
+		*
+		* @param	name	Name to find
+		* @return	Value for the name, or null
+		*/
+		private T get(String name) {
+			byte[] key = name.getBytes(CHARSET);
+			return get(ByteBuffer.wrap(key), 0, key.length);
+		}
+
+		/**
+		* Look up a name held in a range of bytes
+		*
+		* @param	buffer	Bytes holding the name
+		* @param	start		First byte of the name
+		* @param	end			End of the name, exclusive
+		* @return	Value for the name, or null
+		*/
+		@SuppressWarnings("unchecked")
+		private T get(ByteBuffer buffer, int start, int end) {
+			int mask = keys.length - 1;
+			for (int slot = hash(buffer, start, end) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+				if (matches(keys[slot], buffer, start, end)) {
+					return (T)values[slot];
+				}
+			}
+			return null;
+		}
+
+		/**
+		* Add a name
+		*
+		* @param	name	Name to add
+		* @param	value	Value for the name
+		*/
+		private void put(String name, T value) {
+			if ((size + 1) * 2 > keys.length) {
+				byte[][] oldKeys = keys;
+				Object[] oldValues = values;
+				keys = new byte[oldKeys.length * 2][];
+				values = new Object[oldKeys.length * 2];
+				for (int x = 0; x < oldKeys.length; x++) {
+					if (oldKeys[x] != null) {
+						insert(oldKeys[x], oldValues[x]);
+					}
+				}
+			}
+			if (insert(name.getBytes(CHARSET), value)) {
+				size++;
+			}
+		}
+
+		/**
+		* Put a key in its slot
+		*
+		* @param	key		Encoded name
+		* @param	value	Value for the name
+		* @return	True if the key was new
+		*/
+		private boolean insert(byte[] key, Object value) {
+			ByteBuffer buffer = ByteBuffer.wrap(key);
+			int mask = keys.length - 1;
+			int slot = hash(buffer, 0, key.length) & mask;
+			while (keys[slot] != null) {
+				if (matches(keys[slot], buffer, 0, key.length)) {
+					values[slot] = value;
+					return false;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = value;
+			return true;
+		}
+
+		private static int hash(ByteBuffer buffer, int start, int end) {
+			int hash = 0;
+			for (int x = start; x < end; x++) {
+				hash = 31 * hash + buffer.get(x);
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+			if (key.length != end - start) {
+				return false;
+			}
+			for (int x = 0; x < key.length; x++) {
+				if (key[x] != buffer.get(start + x)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
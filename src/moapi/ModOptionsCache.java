@@ -0,0 +1,201 @@
+package moapi;
+
+import java.io.*;
+import java.util.*;
+
+/**
+* Keeps recently read option files in memory, so returning to a world or
+* server only has to check the file has not changed rather than read it
+* again.  A cached file is reused while its size and last modified time
+* are the same as when it was read.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsCache {
+	/**
+	* Most files to keep, the least recently used is dropped first
+	*/
+	private static int maxEntries = 64;
+
+	/**
+	* Cached files keyed by canonical path, in least recently used order
+	*/
+	private static final LinkedHashMap<String, CachedFile> entries = new LinkedHashMap<String, CachedFile>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, CachedFile> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	/**
+	* Reads served from memory
+	*/
+	private static int hits = 0;
+
+	/**
+	* Reads that had to go to the file
+	*/
+	private static int misses = 0;
+
+	//==============
+	// Reading
+	//==============
+
+	/**
+	* Get the contents of an option file, reading it only if it has changed
+	* since it was last read.  The returned index is shared and must not be
+	* modified.
+	*
+	* @param	file	File to read
+	* @return	Index of the file contents
+	* @throws	FileNotFoundException	If the file does not exist
+	* @throws	IOException	If the file could not be read
+	*/
+	public static ModOptionsIndex read(File file) throws IOException {
+		return read(file, null);
+	}
+
+	/**
+	* Get the contents of an option file, reading it only if it has changed
+	* since it was last read.  Large files are read through the buffered
+	* reader, keeping only the registered options.  The returned index is
+	* shared and must not be modified.
+	*
+	* @param	file	File to read
+	* @param	names	Registered sections and options, null to keep everything
+	* @return	Index of the file contents
+	* @throws	FileNotFoundException	If the file does not exist
+	* @throws	IOException	If the file could not be read
+	*/
+	public static ModOptionsIndex read(File file, ModOptionsBufferedReader.Names names) throws IOException {
+		String path = file.getCanonicalPath();
+		long modified = file.lastModified();
+		long size = file.length();
+		if (modified == 0L && !file.exists()) {
+			synchronized (entries) {
+				entries.remove(path);
+			}
+			throw new FileNotFoundException(path);
+		}
+		synchronized (entries) {
+			CachedFile entry = entries.get(path);
+			// A file read for other names may be missing options now wanted
+			if ((entry != null) && (entry.size == size) && (entry.modified == modified) && ((entry.names == null) || (entry.names == names))) {
+				hits++;
+				return entry.index;
+			}
+		}
+		ModOptionsIndex index = ModOptionsBufferedReader.read(file, names);
+		// Small files are read in full, whatever names were asked for
+		if (size < ModOptionsBufferedReader.MIN_SIZE) {
+			names = null;
+		}
+		synchronized (entries) {
+			misses++;
+			entries.put(path, new CachedFile(size, modified, index, names));
+		}
+		return index;
+	}
+
+	/**
+	* Forget a file so the next read goes to disk
+	*
+	* @param	file	File to forget
+	*/
+	public static void invalidate(File file) {
+		try {
+			String path = file.getCanonicalPath();
+			synchronized (entries) {
+				entries.remove(path);
+			}
+		} catch (IOException ignored) {}
+	}
+
+	/**
+	* Forget all files
+	*/
+	public static void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	//==============
+	// Settings
+	//==============
+
+	/**
+	* Set the most files to keep in memory
+	*
+	* @param	max	Maximum number of cached files, at least 1
+	*/
+	public static void setMaxEntries(int max) {
+		synchronized (entries) {
+			maxEntries = Math.max(1, max);
+			Iterator<String> iterator = entries.keySet().iterator();
+			while (entries.size() > maxEntries && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		}
+	}
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the number of reads served from memory
+	*
+	* @return	Cache hits since startup
+	*/
+	public static int getHits() {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	/**
+	* Get the number of reads that went to the file
+	*
+	* @return	Cache misses since startup
+	*/
+	public static int getMisses() {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	/**
+	* Get the number of files currently held
+	*
+	* @return	Number of cached files
+	*/
+	public static int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	* A file as it was when last read
+	*/
+	private static class CachedFile {
+		/** Size of the file when read */
+		private final long size;
+		/** Modified time of the file when read */
+		private final long modified;
+		/** Contents of the file */
+		private final ModOptionsIndex index;
+		/** Names the contents were limited to, null if read in full */
+		private final ModOptionsBufferedReader.Names names;
+
+		private CachedFile(long size, long modified, ModOptionsIndex index, ModOptionsBufferedReader.Names names) {
+			this.size = size;
+			this.modified = modified;
+			this.index = index;
+			this.names = names;
+		}
+	}
+}
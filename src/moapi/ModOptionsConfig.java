@@ -0,0 +1,207 @@
+package moapi;
+
+import java.io.*;
+import java.util.*;
+
+/**
+* Settings for the API itself, shared by every world on this install.
+* They are kept in config/moapi.properties under the Minecraft folder so
+* they can also be changed by hand or by scripts.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsConfig {
+	/**
+	* Format new option files are written in, "text" or "binary"
+	*/
+	public static final String FORMAT = "format";
+
+	/**
+	* True to record each change in a journal instead of rewriting files
+	*/
+	public static final String JOURNAL = "journal";
+
+	/**
+	* Size in bytes a journal may grow to before it is folded into its file
+	*/
+	public static final String JOURNAL_LIMIT = "journal.limit";
+
+	/**
+	* How option values are kept, "files" for a file per mod, "single"
+	* for one file per world or "log" for one log of changes
+	*/
+	public static final String STORE = "store";
+
+	/**
+	* True to reload option files when they are changed by other programs
+	*/
+	public static final String WATCH = "watch";
+
+	/**
+	* Milliseconds to wait for a changed file to settle before reloading it
+	*/
+	public static final String WATCH_DELAY = "watch.delay";
+
+	/**
+	* Milliseconds between batches of changes sent to batched callbacks,
+	* 0 to send them every tick
+	*/
+	public static final String EVENTS_INTERVAL = "events.interval";
+
+	/**
+	* Loaded settings, read on first use
+	*/
+	private static Properties properties = null;
+
+	/**
+	* Changed whenever the settings are changed or reloaded, so values
+	* worked out from them can be kept until then
+	*/
+	private static volatile int version = 0;
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get a setting
+	*
+	* @param	key					Name of the setting
+	* @param	defaultValue	Value to use if the setting is not set
+	* @return	Value of the setting
+	*/
+	public static synchronized String getString(String key, String defaultValue) {
+		return getProperties().getProperty(key, defaultValue);
+	}
+
+	/**
+	* Get a true/false setting
+	*
+	* @param	key					Name of the setting
+	* @param	defaultValue	Value to use if the setting is not set
+	* @return	Value of the setting
+	*/
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.valueOf(value.trim());
+	}
+
+	/**
+	* Get a numeric setting
+	*
+	* @param	key					Name of the setting
+	* @param	defaultValue	Value to use if the setting is not set or not a number
+	* @return	Value of the setting
+	*/
+	public static int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException ignored) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	* Check if option files should be written in the binary format
+	*
+	* @return	True for binary files, false for text files
+	*/
+	public static boolean useBinaryFormat() {
+		return "binary".equalsIgnoreCase(getString(FORMAT, "text").trim());
+	}
+
+	/**
+	* Get the number of times the settings have changed or been reloaded
+	*
+	* @return	Version of the settings
+	*/
+	static int getVersion() {
+		return version;
+	}
+
+	//==============
+	// Setters
+	//==============
+
+	/**
+	* Change a setting and save the settings file
+	*
+	* @param	key		Name of the setting
+	* @param	value	New value, null to remove the setting
+	*/
+	public static synchronized void set(String key, String value) {
+		if (value == null) {
+			getProperties().remove(key);
+		} else {
+			getProperties().setProperty(key, value);
+		}
+		version++;
+		File file = getFile();
+		file.getParentFile().mkdirs();
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				properties.store(out, "Mod Options API settings");
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not save settings to " + file.getName());
+		}
+	}
+
+	/**
+	* Re-read the settings file on next use
+	*/
+	public static synchronized void reload() {
+		properties = null;
+		version++;
+	}
+
+	//==============
+	// File
+	//==============
+
+	/**
+	* Get the settings, reading them on first use
+	*
+	* @return	Loaded settings
+	*/
+	private static Properties getProperties() {
+		if (properties == null) {
+			properties = new Properties();
+			File file = getFile();
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (FileNotFoundException e) {
+				// Ignore, defaults are used
+			} catch (IOException e) {
+				System.out.println("(ModOptionsAPI): IOException occured: " + e.getMessage());
+			}
+		}
+		return properties;
+	}
+
+	/**
+	* Get the settings file
+	*
+	* @return	config/moapi.properties in the Minecraft folder
+	*/
+	private static File getFile() {
+		return new File(ModOptionsAPI.getMinecraftFolder() + "config/moapi.properties");
+	}
+}
@@ -0,0 +1,295 @@
+package moapi;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Delivers option changes to callbacks and listeners.  Callbacks are told
+* of a change straight away unless they ask for batched delivery, in which case
+* changes are queued and handed over together once per game tick, or
+* once per events.interval milliseconds if set in config/moapi.properties.
+* Several changes to one option before a batch is sent, such as dragging
+* a slider, reach the callback once, after the last of them.
+*
+* Changes made while options are being loaded are held until the load is
+* done, then each callback is told of all the changes it covers at once.
+*
+* On the client batches are sent on the game thread by the core's tick
+* hooks.  The dedicated server has no game thread hook, so there they are
+* sent on a background thread.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsEvents {
+	/**
+	* Changed options waiting to be sent, in the order they first changed
+	*/
+	private static final LinkedHashSet<ModOption> queued = new LinkedHashSet<ModOption>();
+
+	/**
+	* Time the last batch was sent
+	*/
+	private static long lastSent = 0;
+
+	/**
+	* Called when the queue stops being empty, may be null
+	*/
+	private static volatile Runnable wakeUp = null;
+
+	/**
+	* Sends batches on the dedicated server, started when first needed
+	*/
+	private static ScheduledExecutorService timer = null;
+
+	/**
+	* Options changed during the loads running on each thread
+	*/
+	private static final ThreadLocal<Bulk> bulk = new ThreadLocal<Bulk>();
+
+	//==============
+	// Posting
+	//==============
+
+	/**
+	* Tell the callbacks and listeners of an option that its value changed
+	*
+	* @param	option	Option that changed
+	*/
+	public static void post(ModOption option) {
+		Bulk current = bulk.get();
+		if (current != null) {
+			current.changed.add(option);
+			return;
+		}
+		// Noted before any callback runs, so readers see the new value
+		if (option.getSlot() >= 0) {
+			OptionSnapshot.changed(Collections.singleton(option));
+		}
+		ModOptionCallback[] callbacks = option.getDispatch();
+		if (callbacks.length == 0) {
+			return;
+		}
+		boolean batched = false;
+		for (ModOptionCallback callback : callbacks) {
+			if (callback.isBatched()) {
+				batched = true;
+			} else {
+				callback.onChange(option);
+			}
+		}
+		if (batched) {
+			queue(Collections.singleton(option));
+		}
+	}
+
+	/**
+	* Tell the callbacks and listeners of a key option that its key was
+	* pressed or released
+	*
+	* @param	option	Key option whose key changed
+	* @param	pressed	True if pressed, false if released
+	*/
+	public static void postKey(ModOption option, boolean pressed) {
+		for (ModOptionCallback callback : option.getDispatch()) {
+			callback.onKey(option, pressed);
+		}
+	}
+
+	/**
+	* Note the value an option is using after it switched between its
+	* global and local value
+	*
+	* @param	option	Option that changed scope
+	*/
+	static void scopeChanged(ModOption option) {
+		Bulk current = bulk.get();
+		if (current != null) {
+			current.scoped.add(option);
+		} else if (option.getSlot() >= 0) {
+			OptionSnapshot.changed(Collections.singleton(option));
+		}
+	}
+
+	/**
+	* Queue options for the batched callbacks
+	*
+	* @param	options	Changed options
+	*/
+	private static void queue(Collection<ModOption> options) {
+		boolean first;
+		synchronized (queued) {
+			first = queued.isEmpty();
+			queued.addAll(options);
+		}
+		if (first) {
+			if (ModOptionsAPI.isServer()) {
+				schedule();
+			} else if (wakeUp != null) {
+				wakeUp.run();
+			}
+		}
+	}
+
+	/**
+	* Set what to run when changes are queued while none were waiting, so
+	* a tick hook that has stopped can be started again
+	*
+	* @param	runnable	Run on the thread that queued the change, null for nothing
+	*/
+	public static void setWakeUp(Runnable runnable) {
+		wakeUp = runnable;
+	}
+
+	/**
+	* Hold the changes made on this thread until the matching endBulk.
+	* Calls may be nested.
+	*/
+	static void startBulk() {
+		Bulk current = bulk.get();
+		if (current == null) {
+			current = new Bulk();
+			bulk.set(current);
+		}
+		current.depth++;
+	}
+
+	/**
+	* Send the changes held since startBulk, once the outermost bulk ends.
+	* Callbacks not batched are told now, batched ones with the next batch.
+	*/
+	static void endBulk() {
+		Bulk current = bulk.get();
+		if (--current.depth > 0) {
+			return;
+		}
+		bulk.remove();
+		if (!current.changed.isEmpty() || !current.scoped.isEmpty()) {
+			current.scoped.addAll(current.changed);
+			OptionSnapshot.changed(current.scoped);
+		}
+		if (current.changed.isEmpty()) {
+			return;
+		}
+		ModOption[] changed = current.changed.toArray(new ModOption[current.changed.size()]);
+		send(changed, false);
+		for (ModOption option : changed) {
+			if (hasBatched(option)) {
+				queue(current.changed);
+				break;
+			}
+		}
+	}
+
+	/**
+	* Check if any callback of an option is batched
+	*
+	* @param	option	Changed option
+	* @return	True if a callback wants batches
+	*/
+	private static boolean hasBatched(ModOption option) {
+		for (ModOptionCallback callback : option.getDispatch()) {
+			if (callback.isBatched()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//==============
+	// Sending
+	//==============
+
+	/**
+	* Send the queued changes if a batch is due.  Call on the game thread.
+	*
+	* @return	True if changes are still waiting to be sent
+	*/
+	public static boolean dispatch() {
+		ModOption[] batch;
+		synchronized (queued) {
+			if (queued.isEmpty()) {
+				return false;
+			}
+			long now = System.currentTimeMillis();
+			if (now - lastSent < getInterval()) {
+				return true;
+			}
+			lastSent = now;
+			batch = queued.toArray(new ModOption[queued.size()]);
+			queued.clear();
+		}
+		send(batch, true);
+		return false;
+	}
+
+	/**
+	* Tell each callback of the changed options it covers, in one call
+	*
+	* @param	changed	Changed options
+	* @param	batched	True to tell the batched callbacks, false for the others
+	*/
+	private static void send(ModOption[] changed, boolean batched) {
+		LinkedHashMap<ModOptionCallback, List<ModOption>> covered = new LinkedHashMap<ModOptionCallback, List<ModOption>>();
+		for (ModOption option : changed) {
+			for (ModOptionCallback callback : option.getDispatch()) {
+				if (callback.isBatched() == batched) {
+					List<ModOption> options = covered.get(callback);
+					if (options == null) {
+						options = new ArrayList<ModOption>();
+						covered.put(callback, options);
+					}
+					options.add(option);
+				}
+			}
+		}
+		for (Map.Entry<ModOptionCallback, List<ModOption>> entry : covered.entrySet()) {
+			entry.getKey().onChanges(entry.getValue().toArray(new ModOption[entry.getValue().size()]));
+		}
+	}
+
+	/**
+	* Get the milliseconds between batches
+	*
+	* @return	Milliseconds, 0 to send every tick
+	*/
+	private static int getInterval() {
+		return Math.max(0, ModOptionsConfig.getInt(ModOptionsConfig.EVENTS_INTERVAL, 0));
+	}
+
+	/**
+	* Send the queue on the dedicated server once a batch is due
+	*/
+	private static synchronized void schedule() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "MOAPI Events");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		// A server tick is 50 milliseconds
+		timer.schedule(new Runnable() {
+			public void run() {
+				if (dispatch()) {
+					schedule();
+				}
+			}
+		}, Math.max(50, getInterval()), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	* Options changed during the loads running on a thread
+	*/
+	private static class Bulk {
+		/** Number of loads started and not yet ended */
+		private int depth = 0;
+		/** Changed options, in the order they first changed */
+		private final LinkedHashSet<ModOption> changed = new LinkedHashSet<ModOption>();
+		/** Options which switched scope */
+		private final LinkedHashSet<ModOption> scoped = new LinkedHashSet<ModOption>();
+	}
+}
@@ -0,0 +1,227 @@
+package moapi;
+
+import java.io.*;
+import java.util.*;
+
+/**
+* In-memory index of a .moapi file, mapping each section name to the
+* id/value pairs stored under it.  The file is read once and every set
+* of options in a mod is handed its own section from the index.  Values
+* read from text files are strings, values read from binary files keep
+* their type.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsIndex {
+	/**
+	* Section name used for the options of a top level mod
+	*/
+	public static final String TOPLEVEL = "toplevel";
+
+	/**
+	* Returned for sections which are not in the file
+	*/
+	private static final Map<String, Object> EMPTY_SECTION = Collections.emptyMap();
+
+	/**
+	* Sections of the file, in the order they were read
+	*/
+	private LinkedHashMap<String, LinkedHashMap<String, Object>> sections = new LinkedHashMap<String, LinkedHashMap<String, Object>>();
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Check if a section was present in the file
+	*
+	* @param	name	Name of the section, without brackets
+	* @return	True if the section exists
+	*/
+	public boolean hasSection(String name) {
+		return sections.containsKey(name);
+	}
+
+	/**
+	* Get the values stored under a section
+	*
+	* @param	name	Name of the section, without brackets
+	* @return	Map of option id to stored value, empty if there is no such section
+	*/
+	public Map<String, Object> getSection(String name) {
+		LinkedHashMap<String, Object> section = sections.get(name);
+		if (section == null) {
+			return EMPTY_SECTION;
+		}
+		return section;
+	}
+
+	/**
+	* Get the names of all sections in the file
+	*
+	* @return	Section names in file order
+	*/
+	public Set<String> getSectionNames() {
+		return sections.keySet();
+	}
+
+	//==============
+	// Setters
+	//==============
+
+	/**
+	* Store a value in a section, creating the section if needed
+	*
+	* @param	section	Name of the section, without brackets
+	* @param	id			Option id
+	* @param	value		Value as stored in the file
+	*/
+	public void put(String section, String id, Object value) {
+		LinkedHashMap<String, Object> map = sections.get(section);
+		if (map == null) {
+			map = new LinkedHashMap<String, Object>();
+			sections.put(section, map);
+		}
+		map.put(id, value);
+	}
+
+	/**
+	* Remove a value from a section
+	*
+	* @param	section	Name of the section, without brackets
+	* @param	id			Option id
+	*/
+	public void remove(String section, String id) {
+		LinkedHashMap<String, Object> map = sections.get(section);
+		if (map != null) {
+			map.remove(id);
+		}
+	}
+
+	/**
+	* Make a copy of this index which can be changed without affecting it
+	*
+	* @return	Copy of the index
+	*/
+	public ModOptionsIndex copy() {
+		ModOptionsIndex index = new ModOptionsIndex();
+		for (Map.Entry<String, LinkedHashMap<String, Object>> entry : sections.entrySet()) {
+			index.sections.put(entry.getKey(), new LinkedHashMap<String, Object>(entry.getValue()));
+		}
+		return index;
+	}
+
+	/**
+	* Start a new section while reading a file.  Only the first section
+	* with a name is used, later duplicates are skipped.
+	*
+	* @param	name	Name of the section, without brackets
+	* @return	Map to read the section into, or null to skip it
+	*/
+	Map<String, Object> startSection(String name) {
+		if (sections.containsKey(name)) {
+			return null;
+		}
+		LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+		sections.put(name, map);
+		return map;
+	}
+
+	//==============
+	// Writing
+	//==============
+
+	/**
+	* Write the index in the text format
+	*
+	* @param	printwriter	Writer to write the file to
+	*/
+	public void writeText(PrintWriter printwriter) {
+		for (Map.Entry<String, LinkedHashMap<String, Object>> section : sections.entrySet()) {
+			printwriter.println("[" + section.getKey() + "]");
+			for (Map.Entry<String, Object> entry : section.getValue().entrySet()) {
+				printwriter.println(entry.getKey() + ":" + entry.getValue().toString());
+			}
+		}
+	}
+
+	//==============
+	// Parsing
+	//==============
+
+	/**
+	* Read and index a .moapi file, in either the text or binary format
+	*
+	* @param	file	File to read
+	* @return	Index of the file contents
+	* @throws	FileNotFoundException	If the file does not exist
+	* @throws	IOException	If the file could not be read
+	*/
+	public static ModOptionsIndex read(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	* Index the contents of a stream, detecting the format from the first bytes
+	*
+	* @param	in	Stream positioned at the start of the file
+	* @return	Index of the contents
+	* @throws	IOException	If the stream fails or holds a bad binary file
+	*/
+	public static ModOptionsIndex read(InputStream in) throws IOException {
+		if (!in.markSupported()) {
+			in = new BufferedInputStream(in);
+		}
+		byte[] head = new byte[ModOptionsBinary.MAGIC.length];
+		in.mark(head.length);
+		int len = 0;
+		int count;
+		while ((len < head.length) && ((count = in.read(head, len, head.length - len)) > 0)) {
+			len += count;
+		}
+		in.reset();
+		if (ModOptionsBinary.isBinary(head, len)) {
+			return ModOptionsBinary.read(new DataInputStream(in));
+		}
+		return parse(new BufferedReader(new InputStreamReader(in)));
+	}
+
+	/**
+	* Index the contents of a reader in a single pass
+	*
+	* @param	reader	Reader positioned at the start of the file
+	* @return	Index of the contents
+	* @throws	IOException	If the reader fails
+	*/
+	public static ModOptionsIndex parse(BufferedReader reader) throws IOException {
+		ModOptionsIndex index = new ModOptionsIndex();
+		Map<String, Object> current = null;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.length() == 0) {
+				continue;
+			}
+			if (line.charAt(0) == '[') {
+				int end = (line.endsWith("]")) ? line.length() - 1 : line.length();
+				current = index.startSection(line.substring(1, end));
+				continue;
+			}
+			if (current == null) {
+				continue;
+			}
+			int sep = line.indexOf(':');
+			if (sep < 0) {
+				continue;
+			}
+			current.put(line.substring(0, sep), line.substring(sep + 1).replace(":", ""));
+		}
+		return index;
+	}
+}
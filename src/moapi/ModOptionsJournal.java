@@ -0,0 +1,313 @@
+package moapi;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+* Records option changes as they happen by appending them to a journal
+* next to the option file, instead of rewriting the whole file.  Loading
+* reads the file and then replays the journal over it, and once a journal
+* grows past a limit it is folded back into the file on the I/O thread.
+*
+* Each record is one line:
+* <pre>
+* S	section	id	length	value     value set
+* R	section	id                  value removed (back to the global value)
+* </pre>
+*
+* The value is read by its length, so it may hold tabs and line breaks.
+* If a journal can not be written the mod is flagged as needing a save,
+* so the changes are written with the whole file instead.
+*
+* Journalling is turned on with journal=true in config/moapi.properties.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsJournal {
+	/**
+	* Added to the name of an option file to get its journal
+	*/
+	public static final String EXTENSION = ".journal";
+
+	/**
+	* Default size a journal may reach before being folded into its file
+	*/
+	public static final int DEFAULT_LIMIT = 64 * 1024;
+
+	/**
+	* Records waiting to be appended, keyed by option file
+	*/
+	private static final HashMap<File, Records> pending = new HashMap<File, Records>();
+
+	//==============
+	// Recording
+	//==============
+
+	/**
+	* Check if changes are being journalled
+	*
+	* @return	True if journalling is turned on
+	*/
+	public static boolean isEnabled() {
+		return ModOptionsConfig.getBoolean(ModOptionsConfig.JOURNAL, false);
+	}
+
+	/**
+	* Record a changed option in the journal of its file
+	*
+	* @param	store		Store the file belongs to
+	* @param	option	Option that changed, which belongs to a menu
+	* @param	scope		Scope value. True for global
+	* @return	True if the change was recorded, false if it must be saved normally
+	*/
+	static boolean record(FileOptionStore store, ModOption option, boolean scope) {
+		if (!isEnabled()) {
+			return false;
+		}
+		ModOptions parent = option.getParent();
+		ModOptions mod = option.getTopLevel();
+		final File file = mod.getFile((scope) ? "" : ModOptionsAPI.getWorldName());
+		String section = parent.getSectionName();
+		String id = option.getID().replace(":", "");
+		String record;
+		if (scope || !option.useGlobalValue()) {
+			String value = option.getValue(scope).toString();
+			record = "S\t" + section + "\t" + id + "\t" + value.length() + "\t" + value + "\n";
+		} else {
+			record = "R\t" + section + "\t" + id + "\n";
+		}
+		boolean queued;
+		synchronized (pending) {
+			Records records = pending.get(file);
+			queued = (records != null);
+			if (!queued) {
+				records = new Records(store, mod, scope);
+				pending.put(file, records);
+			}
+			records.text.append(record);
+		}
+		if (!queued) {
+			ModOptionsWriter.execute(new Runnable() {
+				public void run() {
+					append(file);
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	* Append any waiting records for a file now
+	*
+	* @param	file	Option file
+	* @return	False if the records could not be appended
+	*/
+	public static boolean flush(File file) {
+		synchronized (ModOptionsWriter.ioLock) {
+			return append(file);
+		}
+	}
+
+	/**
+	* Append the waiting records of every file now, when the game exits
+	*/
+	public static void flush() {
+		synchronized (ModOptionsWriter.ioLock) {
+			List<File> files;
+			synchronized (pending) {
+				files = new ArrayList<File>(pending.keySet());
+			}
+			for (File file : files) {
+				append(file);
+			}
+		}
+	}
+
+	/**
+	* Append waiting records to a journal, folding it into its file if it
+	* has grown too large.  Called with the I/O lock held.  If they can not
+	* be appended the mod is flagged for a full save.
+	*
+	* @param	file	Option file
+	* @return	False if the records could not be appended
+	*/
+	private static boolean append(File file) {
+		Records records;
+		synchronized (pending) {
+			records = pending.remove(file);
+		}
+		if (records == null) {
+			return true;
+		}
+		File journal = getJournal(file);
+		try {
+			FileOutputStream out = new FileOutputStream(journal, true);
+			try {
+				out.write(records.text.toString().getBytes());
+				out.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not write journal " + journal.getName() + ": " + e.getMessage());
+			// The changes were never flagged, have the next save write them
+			records.mod.markDirty(records.scope);
+			return false;
+		}
+		if (journal.length() > ModOptionsConfig.getInt(ModOptionsConfig.JOURNAL_LIMIT, DEFAULT_LIMIT)) {
+			compact(records.store, file);
+		}
+		return true;
+	}
+
+	/**
+	* Fold a journal into its option file and remove it.  Called with the
+	* I/O lock held.
+	*
+	* @param	store	Store the file belongs to
+	* @param	file	Option file
+	*/
+	private static void compact(FileOptionStore store, File file) {
+		ModOptionsIndex index;
+		try {
+			// A save waiting for this file lands before it is read
+			index = store.readBase(file, null).copy();
+		} catch (FileNotFoundException e) {
+			index = new ModOptionsIndex();
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not compact journal for " + file.getName() + ": " + e.getMessage());
+			return;
+		}
+		File journal = getJournal(file);
+		apply(journal, index);
+		byte[] data;
+		if (ModOptionsConfig.useBinaryFormat()) {
+			data = ModOptionsBinary.write(index);
+		} else {
+			StringWriter buffer = new StringWriter();
+			PrintWriter printwriter = new PrintWriter(buffer);
+			index.writeText(printwriter);
+			printwriter.close();
+			data = buffer.toString().getBytes();
+		}
+		store.writeBase(file, data, null);
+		if (store.flushBase(file)) {
+			journal.delete();
+		}
+	}
+
+	/**
+	* Remove the journal of an option file, after the file was edited by
+	* another program.  Changes not yet appended are kept, as they are
+	* newer than the edit.
+	*
+	* @param	file	Option file
+	*/
+	static void discard(File file) {
+		synchronized (ModOptionsWriter.ioLock) {
+			File journal = getJournal(file);
+			if (journal.exists() && !journal.delete()) {
+				System.err.println("(ModOptionsAPI): Could not remove journal " + journal.getName());
+			}
+		}
+	}
+
+	//==============
+	// Replaying
+	//==============
+
+	/**
+	* Apply the journal of an option file over its contents
+	*
+	* @param	file	Option file
+	* @param	index	Contents of the file, not changed
+	* @return	The index with the journal applied, the same index if there is no journal
+	*/
+	public static ModOptionsIndex replay(File file, ModOptionsIndex index) {
+		File journal = getJournal(file);
+		if (!journal.exists()) {
+			return index;
+		}
+		index = index.copy();
+		apply(journal, index);
+		return index;
+	}
+
+	/**
+	* Apply the records of a journal to an index
+	*
+	* @param	journal	Journal file
+	* @param	index		Index to change
+	*/
+	private static void apply(File journal, ModOptionsIndex index) {
+		String text;
+		try {
+			text = new String(Files.readAllBytes(journal.toPath()));
+		} catch (NoSuchFileException e) {
+			// Ignore, no changes recorded
+			return;
+		} catch (IOException e) {
+			System.out.println("(ModOptionsAPI): IOException occured: " + e.getMessage());
+			return;
+		}
+		int pos = 0;
+		while (pos < text.length()) {
+			int end = text.indexOf('\n', pos);
+			if (end < 0) {
+				// Cut short by a crash
+				break;
+			}
+			String[] parts = text.substring(pos, end).split("\t", 5);
+			int next = end + 1;
+			if ((parts.length == 3) && parts[0].equals("R")) {
+				index.remove(parts[1], parts[2]);
+			} else if ((parts.length == 5) && parts[0].equals("S")) {
+				// The value may run over several lines, its length says where it ends
+				int start = pos + parts[0].length() + parts[1].length() + parts[2].length() + parts[3].length() + 4;
+				try {
+					int valueEnd = start + Integer.parseInt(parts[3]);
+					// A record cut short by a crash is ignored
+					if ((valueEnd >= start) && (valueEnd < text.length()) && (text.charAt(valueEnd) == '\n')) {
+						index.put(parts[1], parts[2], text.substring(start, valueEnd));
+						next = valueEnd + 1;
+					}
+				} catch (NumberFormatException ignored) {}
+			}
+			pos = next;
+		}
+	}
+
+	/**
+	* Get the journal for an option file
+	*
+	* @param	file	Option file
+	* @return	Journal file
+	*/
+	public static File getJournal(File file) {
+		return new File(file.getPath() + EXTENSION);
+	}
+
+	/**
+	* Records waiting to be appended to a journal
+	*/
+	private static class Records {
+		/** Store the file belongs to */
+		private final FileOptionStore store;
+		/** Top level options of the mod the file belongs to */
+		private final ModOptions mod;
+		/** Scope of the file. True for global */
+		private final boolean scope;
+		/** Records, one per line */
+		private final StringBuilder text = new StringBuilder();
+
+		private Records(FileOptionStore store, ModOptions mod, boolean scope) {
+			this.store = store;
+			this.mod = mod;
+			this.scope = scope;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package moapi;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+* Callbacks listening for changes to more than one option.  A listener
+* can be added to a single option, to a menu to hear of every option
+* below it, or to every option of every mod.  These are told of changes
+* along with the option's own callback.
+*
+* Each option keeps the list of callbacks to tell, collected from itself,
+* its menus and the global listeners, so a change only looks at the
+* listeners on its own path.  The lists are collected again after any
+* listener is added or removed or an option is moved.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsListeners {
+	/**
+	* Changed whenever listeners or menus change, so options collect their
+	* callbacks again
+	*/
+	private static final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	* Listeners of each option or menu
+	*/
+	private static final IdentityHashMap<ModOption, ModOptionCallback[]> listeners = new IdentityHashMap<ModOption, ModOptionCallback[]>();
+
+	/**
+	* Listeners of every option
+	*/
+	private static ModOptionCallback[] global = new ModOptionCallback[0];
+
+	//==============
+	// Listeners
+	//==============
+
+	/**
+	* Listen for changes to an option, or to every option below a menu
+	*
+	* @param	option		Option or menu to listen to
+	* @param	listener	Callback to tell of changes
+	*/
+	public static synchronized void add(ModOption option, ModOptionCallback listener) {
+		listeners.put(option, append(listeners.get(option), listener));
+		invalidate();
+	}
+
+	/**
+	* Stop listening to an option or menu
+	*
+	* @param	option		Option or menu listened to
+	* @param	listener	Callback added for it
+	*/
+	public static synchronized void remove(ModOption option, ModOptionCallback listener) {
+		ModOptionCallback[] current = remove(listeners.get(option), listener);
+		if (current == null) {
+			listeners.remove(option);
+		} else {
+			listeners.put(option, current);
+		}
+		invalidate();
+	}
+
+	/**
+	* Listen for changes to every option of every mod
+	*
+	* @param	listener	Callback to tell of changes
+	*/
+	public static synchronized void addGlobal(ModOptionCallback listener) {
+		global = append(global, listener);
+		invalidate();
+	}
+
+	/**
+	* Stop listening to every option
+	*
+	* @param	listener	Callback added for every option
+	*/
+	public static synchronized void removeGlobal(ModOptionCallback listener) {
+		ModOptionCallback[] current = remove(global, listener);
+		global = (current == null) ? new ModOptionCallback[0] : current;
+		invalidate();
+	}
+
+	//==============
+	// Dispatch
+	//==============
+
+	/**
+	* Get the current generation of listeners
+	*
+	* @return	Generation, compared against the one an option's list was collected in
+	*/
+	static int getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	* Tell options to collect their callbacks again, called when a
+	* listener, callback or menu changes
+	*/
+	static void invalidate() {
+		// Called outside the lock, two racing changes must never count as one
+		generation.incrementAndGet();
+	}
+
+	/**
+	* Collect the callbacks to tell of changes to an option: its own
+	* callback, its listeners, those of each menu above it, then the
+	* global listeners
+	*
+	* @param	option	Option that may change
+	* @return	Callbacks in the order to tell them
+	*/
+	static synchronized ModOptionCallback[] collect(ModOption option) {
+		ArrayList<ModOptionCallback> found = new ArrayList<ModOptionCallback>();
+		if (option.hasCallback()) {
+			found.add(option.getCallback());
+		}
+		for (ModOption node = option; node != null; node = node.getParent()) {
+			ModOptionCallback[] own = listeners.get(node);
+			if (own != null) {
+				found.addAll(Arrays.asList(own));
+			}
+		}
+		found.addAll(Arrays.asList(global));
+		return found.toArray(new ModOptionCallback[found.size()]);
+	}
+
+	private static ModOptionCallback[] append(ModOptionCallback[] list, ModOptionCallback listener) {
+		if (list == null) {
+			return new ModOptionCallback[] {listener};
+		}
+		ModOptionCallback[] longer = Arrays.copyOf(list, list.length + 1);
+		longer[list.length] = listener;
+		return longer;
+	}
+
+	private static ModOptionCallback[] remove(ModOptionCallback[] list, ModOptionCallback listener) {
+		if (list == null) {
+			return null;
+		}
+		ArrayList<ModOptionCallback> kept = new ArrayList<ModOptionCallback>(Arrays.asList(list));
+		kept.remove(listener);
+		return (kept.isEmpty()) ? null : kept.toArray(new ModOptionCallback[kept.size()]);
+	}
+}
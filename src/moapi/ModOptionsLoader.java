@@ -0,0 +1,301 @@
+package moapi;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Loads the options of many mods at once.  Reading and parsing each
+* mod's file is independent work, so it is spread over a pool of worker
+* threads; the values are then applied, and option callbacks called, on
+* the thread which asked for the load once every file has been read.
+*
+* Loads can also be started without waiting for them.  On the client the
+* values of such a load are applied on the game thread, either by
+* applyLoads on each tick or by awaitLoads before a screen needs them.
+* The dedicated server has no game thread hook, so there they are
+* applied on the worker thread as soon as they are read.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsLoader {
+	/**
+	* Number of worker threads, one per processor
+	*/
+	private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/**
+	* The worker threads, idle ones are stopped after a while
+	*/
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "MOAPI Loader " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+	/**
+	* Loads started without waiting, in the order they were started
+	*/
+	private static final LinkedList<PendingLoad> pending = new LinkedList<PendingLoad>();
+
+	/**
+	* Thread loads are applied on, null until the first tick
+	*/
+	private static volatile Thread gameThread = null;
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	//==============
+	// Loading
+	//==============
+
+	/**
+	* Load the options of a set of mods, returning once all values have
+	* been applied
+	*
+	* @param	worldName	Name of world/ server to load for, blank for global
+	* @param	mods			Mods to load options for
+	*/
+	public static void load(final String worldName, ModOptions[] mods) {
+		// Earlier loads must not land on top of this one
+		awaitLoads();
+		if (mods.length < 2) {
+			for (ModOptions options : mods) {
+				options.loadValues(worldName);
+			}
+			return;
+		}
+		List<Future<ModOptionsIndex>> reads = new ArrayList<Future<ModOptionsIndex>>(mods.length);
+		for (final ModOptions options : mods) {
+			reads.add(executor.submit(new Callable<ModOptionsIndex>() {
+				public ModOptionsIndex call() {
+					return options.readValues(worldName);
+				}
+			}));
+		}
+		for (int x = 0; x < mods.length; x++) {
+			ModOptionsIndex index = getResult(reads.get(x), mods[x]);
+			if (index != null) {
+				mods[x].applyValues(index, worldName);
+			}
+		}
+	}
+
+	/**
+	* Start loading the options of a mod without waiting for it.  Waiting
+	* on the result from the game thread, or before the first tick, applies
+	* it and any loads started before it there and then.
+	*
+	* @param	options		Mod to load options for
+	* @param	worldName	Name of world/ server to load for, blank for global
+	* @return	Completed with the mod once its values have been applied
+	*/
+	public static Future<ModOptions> loadAsync(final ModOptions options, final String worldName) {
+		return loadAsync(options, worldName, false);
+	}
+
+	/**
+	* Start loading the options of a mod without waiting for it
+	*
+	* @param	options			Mod to load options for
+	* @param	worldName		Name of world/ server to load for, blank for global
+	* @param	changesOnly	True to only set options whose value differs from the file
+	* @return	Completed with the mod once its values have been applied
+	*/
+	static Future<ModOptions> loadAsync(final ModOptions options, final String worldName, boolean changesOnly) {
+		final PendingLoad load;
+		if (ModOptionsAPI.isServer()) {
+			load = new PendingLoad(options, worldName, null, changesOnly);
+			synchronized (pending) {
+				pending.add(load);
+			}
+			executor.execute(new Runnable() {
+				public void run() {
+					load.result.run();
+					synchronized (pending) {
+						pending.remove(load);
+					}
+				}
+			});
+		} else {
+			Future<ModOptionsIndex> read = executor.submit(new Callable<ModOptionsIndex>() {
+				public ModOptionsIndex call() {
+					return options.readValues(worldName);
+				}
+			});
+			load = new PendingLoad(options, worldName, read, changesOnly);
+			synchronized (pending) {
+				pending.add(load);
+			}
+		}
+		return load.result;
+	}
+
+	/**
+	* Apply the values of loads whose files have been read.  Loads are
+	* applied in the order they were started.  Call on the game thread.
+	*
+	* @return	True if loads are still waiting to be applied
+	*/
+	public static boolean applyLoads() {
+		gameThread = Thread.currentThread();
+		while (true) {
+			PendingLoad load;
+			synchronized (pending) {
+				load = pending.peek();
+				if ((load == null) || !load.isReady()) {
+					return (load != null);
+				}
+				pending.poll();
+			}
+			load.result.run();
+		}
+	}
+
+	/**
+	* Wait for every load started so far, applying the values of loads
+	* that have not been applied yet.  Call on the game thread.
+	*/
+	public static void awaitLoads() {
+		gameThread = Thread.currentThread();
+		while (true) {
+			PendingLoad load;
+			synchronized (pending) {
+				load = pending.poll();
+			}
+			if (load == null) {
+				return;
+			}
+			// Already running on a server worker, in which case this only waits
+			load.result.run();
+			getResult(load.result, load.options);
+		}
+	}
+
+	/**
+	* Apply loads in order up to and including one, for a wait on the game
+	* thread that would otherwise stop the tick which applies it
+	*
+	* @param	target	Load being waited on
+	*/
+	private static void applyThrough(PendingLoad target) {
+		while (true) {
+			PendingLoad load;
+			synchronized (pending) {
+				if (!pending.contains(target)) {
+					return;
+				}
+				load = pending.poll();
+			}
+			load.result.run();
+			getResult(load.result, load.options);
+		}
+	}
+
+	/**
+	* Check if waiting on a load must apply it rather than block
+	*
+	* @return	True on the game thread, or anywhere before the first tick
+	*/
+	private static boolean mustApply() {
+		Thread thread = gameThread;
+		return (thread == null) || (thread == Thread.currentThread());
+	}
+
+	/**
+	* Wait for a read or load to finish
+	*
+	* @param	read		Read or load of a mod's file
+	* @param	options	Mod being read
+	* @return	Result of the task, or null if it failed
+	*/
+	private static <V> V getResult(Future<V> read, ModOptions options) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return read.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					System.err.println("(ModOptionsAPI): Could not load options for " + options.getID() + ": " + e.getCause());
+					return null;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the number of worker threads
+	*
+	* @return	Most files read at the same time
+	*/
+	public static int getThreads() {
+		return THREADS;
+	}
+
+	/**
+	* A load started without waiting
+	*/
+	private static class PendingLoad {
+		/** Mod being loaded */
+		private final ModOptions options;
+		/** Read of the mod's file, null if read as part of the result */
+		private final Future<ModOptionsIndex> read;
+		/** Applies the values once read */
+		private final FutureTask<ModOptions> result;
+
+		private PendingLoad(final ModOptions options, final String worldName, final Future<ModOptionsIndex> read, final boolean changesOnly) {
+			this.options = options;
+			this.read = read;
+			this.result = new FutureTask<ModOptions>(new Callable<ModOptions>() {
+				public ModOptions call() {
+					ModOptionsIndex index = (read != null) ? getResult(read, options) : options.readValues(worldName);
+					if (index != null) {
+						options.applyValues(index, worldName, changesOnly);
+					}
+					return options;
+				}
+			}) {
+				public ModOptions get() throws InterruptedException, ExecutionException {
+					if (!isDone() && mustApply()) {
+						applyThrough(PendingLoad.this);
+					}
+					return super.get();
+				}
+
+				public ModOptions get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+					if (!isDone() && mustApply()) {
+						applyThrough(PendingLoad.this);
+					}
+					return super.get(timeout, unit);
+				}
+			};
+		}
+
+		/**
+		* Check if the values can be applied without waiting
+		*
+		* @return	True once the file has been read
+		*/
+		private boolean isReady() {
+			return (read == null) || read.isDone();
+		}
+	}
+}
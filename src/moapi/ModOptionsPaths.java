@@ -0,0 +1,97 @@
+package moapi;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import net.minecraft.server.*;
+
+/**
+* Remembers where the option files of each mod are, so loading and
+* saving do not work out folders and create them every time.  Paths are
+* kept per world and mod, and forgotten whenever a new world is loaded
+* since the folder of a local world can change with it.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsPaths {
+	/**
+	* Option files by world name, then by mod id
+	*/
+	private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Path>> files = new ConcurrentHashMap<String, ConcurrentHashMap<String, Path>>();
+
+	/**
+	* Option folders by world name, created when first resolved
+	*/
+	private static final ConcurrentHashMap<String, Path> folders = new ConcurrentHashMap<String, Path>();
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the option file of a mod
+	*
+	* @param	modID			Id of the top level mod
+	* @param	worldName	Name of world/ server, blank for global
+	* @return	Path of the mod's .moapi file
+	*/
+	public static Path getFile(String modID, String worldName) {
+		ConcurrentHashMap<String, Path> world = files.get(worldName);
+		if (world == null) {
+			world = new ConcurrentHashMap<String, Path>();
+			ConcurrentHashMap<String, Path> existing = files.putIfAbsent(worldName, world);
+			if (existing != null) {
+				world = existing;
+			}
+		}
+		Path file = world.get(modID);
+		if (file == null) {
+			file = getFolder(worldName).resolve(modID + ".moapi");
+			world.put(modID, file);
+		}
+		return file;
+	}
+
+	/**
+	* Get the folder option files are kept in, creating it the first time
+	*
+	* @param	worldName	Name of world/ server, blank for global
+	* @return	Path of the folder
+	*/
+	public static Path getFolder(String worldName) {
+		Path folder = folders.get(worldName);
+		if (folder != null) {
+			return folder;
+		}
+		String folderName;
+		if (ModOptionsAPI.isServer()) {
+			folderName = ModOptionsAPI.getMinecraftFolder() + worldName + "/";
+		} else if (worldName.length()==0) { // Global
+			folderName = ModOptionsAPI.getMinecraftFolder() + "config/";
+		} else { // Local
+			folderName = ModOptionsAPI.getMinecraftFolder() + "saves/" + MinecraftServer.getServer().getFolderName() + "/";
+		}
+		folder = Paths.get(folderName);
+		try {
+			Files.createDirectories(folder);
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not create " + folderName + ": " + e.getMessage());
+		}
+		folders.put(worldName, folder);
+		return folder;
+	}
+
+	//==============
+	// Setters
+	//==============
+
+	/**
+	* Forget every path, called when a world is loaded
+	*/
+	public static void invalidate() {
+		folders.clear();
+		files.clear();
+	}
+}
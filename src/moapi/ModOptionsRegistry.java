@@ -0,0 +1,158 @@
+package moapi;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Index of every registered option by its full path, the mod id, then
+* any sub menu ids, then the option id, separated by '/' (for example
+* "mymod/render/distance").  Menus are indexed too.  The index is kept up
+* to date as mods and options are added, and can be read from any thread.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsRegistry {
+	/**
+	* Separator between the ids in a path
+	*/
+	public static final char SEPARATOR = '/';
+
+	/**
+	* Options by path, for exact lookups
+	*/
+	private static final ConcurrentHashMap<String, ModOption> options = new ConcurrentHashMap<String, ModOption>();
+
+	/**
+	* Options by path in path order, for prefix scans
+	*/
+	private static final ConcurrentSkipListMap<String, ModOption> sorted = new ConcurrentSkipListMap<String, ModOption>();
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get an option by its path
+	*
+	* @param	path	Full path of the option
+	* @return	The option, or null if none is registered at the path
+	*/
+	public static ModOption get(String path) {
+		return options.get(path);
+	}
+
+	/**
+	* Get every option whose path starts with a prefix.  Use a prefix ending
+	* in '/' to get everything within a mod or menu.
+	*
+	* @param	prefix	Start of the paths
+	* @return	Read only view of the options by path, in path order
+	*/
+	public static SortedMap<String, ModOption> getAll(String prefix) {
+		return Collections.unmodifiableSortedMap(sorted.subMap(prefix, true, prefix + Character.MAX_VALUE, false));
+	}
+
+	/**
+	* Get the path of an option
+	*
+	* @param	option	Option to get the path of
+	* @return	Full path of the option, or null if it is not in a registered mod
+	*/
+	public static String getPath(ModOption option) {
+		StringBuilder path = new StringBuilder(option.getID());
+		ModOption top = option;
+		while (top.getParent() != null) {
+			top = top.getParent();
+			path.insert(0, SEPARATOR).insert(0, top.getID());
+		}
+		if (ModOptionsAPI.getModOptions(top.getID()) != top) {
+			return null;
+		}
+		return path.toString();
+	}
+
+	//==============
+	// Updating
+	//==============
+
+	/**
+	* Index a mod, in place of any mod registered before with its id
+	*
+	* @param	mod	Top level options of the mod
+	* @param	old	Mod replaced, or null
+	*/
+	static synchronized void modAdded(ModOptions mod, ModOptions old) {
+		if (old != null) {
+			remove(old.getID());
+		}
+		put(mod.getID(), mod);
+	}
+
+	/**
+	* Index an option just added to a menu, in place of any option the
+	* menu held before with its id.  Nothing is indexed until the menu is
+	* part of a registered mod, the whole menu is indexed then.
+	*
+	* @param	menu		Menu the option was added to
+	* @param	option	Option added
+	* @param	old			Option replaced, or null
+	*/
+	static synchronized void optionAdded(ModOptions menu, ModOption option, ModOption old) {
+		String base = getPath(menu);
+		if (base == null) {
+			return;
+		}
+		String path = base + SEPARATOR + option.getID();
+		if (old != null) {
+			remove(path);
+		}
+		put(path, option);
+	}
+
+	/**
+	* Index an option and everything below it
+	*
+	* @param	path		Path of the option
+	* @param	option	Option to index
+	*/
+	private static void put(String path, ModOption option) {
+		options.put(path, option);
+		sorted.put(path, option);
+		OptionSnapshot.register(option);
+		if (option instanceof ModOptions) {
+			for (ModOption child : ((ModOptions)option).getOptions()) {
+				put(path + SEPARATOR + child.getID(), child);
+			}
+		}
+	}
+
+	/**
+	* Remove an option and everything below it from the index
+	*
+	* @param	path	Path of the option
+	*/
+	private static void remove(String path) {
+		release(options.remove(path));
+		sorted.remove(path);
+		String prefix = path + SEPARATOR;
+		Iterator<String> paths = sorted.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet().iterator();
+		while (paths.hasNext()) {
+			release(options.remove(paths.next()));
+			paths.remove();
+		}
+	}
+
+	/**
+	* Free the snapshot slot of an option no longer indexed, for the option
+	* replacing it
+	*
+	* @param	option	Option removed, may be null
+	*/
+	private static void release(ModOption option) {
+		if (option != null) {
+			OptionSnapshot.release(option);
+		}
+	}
+}
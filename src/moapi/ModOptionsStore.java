@@ -0,0 +1,391 @@
+package moapi;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+* Keeps the options of every mod for a world, or for the global scope,
+* in a single file instead of one file per mod.  Each mod's options are
+* stored exactly as its own .moapi file would hold them, in the text or
+* binary format, one after the other.
+*
+* <pre>
+* magic    4 bytes "MOAS"
+* version  1 byte
+* mods     int count, then for each:
+*            UTF mod id, int length, the mod's options
+* </pre>
+*
+* The whole file is read once and held, and is rewritten whole when any
+* mod changes.  Only the parsing of each mod's options is left until it
+* is loaded.  Version 1 files, which put an index of offsets before the
+* options, are still read.
+*
+* Used by SingleFileOptionStore, chosen with store=single in
+* config/moapi.properties.
+* A mod still in its own file is moved into the store the first time it
+* is loaded.  Journals are still kept per mod.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsStore {
+	/**
+	* Name of the store file in each options folder
+	*/
+	public static final String FILENAME = "moapi.store";
+
+	/**
+	* First bytes of every store file
+	*/
+	public static final byte[] MAGIC = {'M', 'O', 'A', 'S'};
+
+	/**
+	* Current version of the format
+	*/
+	public static final int VERSION = 2;
+
+	/**
+	* Contents of the store files in use, keyed by store file
+	*/
+	private static final HashMap<File, Contents> stores = new HashMap<File, Contents>();
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the store holding a mod's options
+	*
+	* @param	file	The mod's own .moapi file
+	* @return	Store file in the same folder
+	*/
+	public static File getStoreFile(File file) {
+		return new File(file.getParentFile(), FILENAME);
+	}
+
+	/**
+	* Get the file a mod would have of its own
+	*
+	* @param	store	Store file
+	* @param	id		Id of the mod
+	* @return	The mod's own .moapi file in the same folder
+	*/
+	public static File getModFile(File store, String id) {
+		return new File(store.getParentFile(), id + ".moapi");
+	}
+
+	/**
+	* Get the id a mod is stored under
+	*
+	* @param	file	The mod's own .moapi file
+	* @return	Id of the mod
+	*/
+	private static String getModID(File file) {
+		String name = file.getName();
+		return (name.endsWith(".moapi")) ? name.substring(0, name.length() - 6) : name;
+	}
+
+	//==============
+	// Reading
+	//==============
+
+	/**
+	* Read a mod's options from its store, moving them in from the mod's
+	* own file if they are not there yet.  The returned index is shared and
+	* must not be modified.
+	*
+	* @param	file	The mod's own .moapi file
+	* @return	Index of the mod's options
+	* @throws	FileNotFoundException	If the mod has no stored options
+	* @throws	IOException	If the store could not be read
+	*/
+	public static ModOptionsIndex read(File file) throws IOException {
+		File store = getStoreFile(file);
+		String id = getModID(file);
+		// Anything still waiting to be saved is newer than the disk
+		ModOptionsWriter.flush(store);
+		Contents contents;
+		byte[] data;
+		synchronized (stores) {
+			contents = getContents(store);
+			ModOptionsIndex index = contents.parsed.get(id);
+			if (index != null) {
+				return index;
+			}
+			data = contents.mods.get(id);
+			if (data == null) {
+				data = migrate(file, store, contents);
+			}
+		}
+		if (data == null) {
+			throw new FileNotFoundException(file.getPath());
+		}
+		// Parsed outside the lock so mods can be read in parallel
+		ModOptionsIndex index = ModOptionsIndex.read(new ByteArrayInputStream(data));
+		synchronized (stores) {
+			if (contents.mods.get(id) == data) {
+				contents.parsed.put(id, index);
+			}
+		}
+		return index;
+	}
+
+	/**
+	* Get the contents of a store, reading it if it is not held or has been
+	* changed by someone else.  Called with the stores lock held.
+	*
+	* @param	store	Store file
+	* @return	Contents of the store
+	* @throws	IOException	If the store could not be read
+	*/
+	private static Contents getContents(File store) throws IOException {
+		Contents contents = stores.get(store);
+		// Once written to, what is held is newer than the disk
+		if ((contents != null) && (contents.written || ((contents.size == store.length()) && (contents.modified == store.lastModified())))) {
+			return contents;
+		}
+		contents = new Contents();
+		if (store.exists()) {
+			contents.size = store.length();
+			contents.modified = store.lastModified();
+			readStore(Files.readAllBytes(store.toPath()), contents);
+		}
+		stores.put(store, contents);
+		return contents;
+	}
+
+	/**
+	* Split a store file into the options of each mod
+	*
+	* @param	bytes			Contents of the file
+	* @param	contents	Contents to fill
+	* @throws	IOException	If the file is not a valid store
+	*/
+	private static void readStore(byte[] bytes, Contents contents) throws IOException {
+		ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+		DataInputStream in = new DataInputStream(buffer);
+		byte[] head = new byte[MAGIC.length];
+		in.readFully(head);
+		if (!Arrays.equals(head, MAGIC)) {
+			throw new IOException("Not an options store");
+		}
+		int version = in.readUnsignedByte();
+		if (version > VERSION) {
+			throw new IOException("Unsupported options store version " + version);
+		}
+		int count = in.readInt();
+		if (version == 1) {
+			readIndexed(bytes, buffer, in, count, contents);
+			return;
+		}
+		for (int x = 0; x < count; x++) {
+			String id = in.readUTF();
+			int length = in.readInt();
+			if ((length < 0) || (length > buffer.available())) {
+				throw new IOException("Bad options store entry " + id);
+			}
+			byte[] data = new byte[length];
+			in.readFully(data);
+			contents.mods.put(id, data);
+		}
+	}
+
+	/**
+	* Split a version 1 store, which starts with an index of offsets
+	*
+	* @param	bytes			Contents of the file
+	* @param	buffer		Stream over the contents, at the start of the index
+	* @param	in				Reader of the stream
+	* @param	count			Number of mods in the index
+	* @param	contents	Contents to fill
+	* @throws	IOException	If the file is not a valid store
+	*/
+	private static void readIndexed(byte[] bytes, ByteArrayInputStream buffer, DataInputStream in, int count, Contents contents) throws IOException {
+		String[] ids = new String[count];
+		int[] offsets = new int[count];
+		int[] lengths = new int[count];
+		for (int x = 0; x < count; x++) {
+			ids[x] = in.readUTF();
+			offsets[x] = in.readInt();
+			lengths[x] = in.readInt();
+		}
+		int start = bytes.length - buffer.available();
+		for (int x = 0; x < count; x++) {
+			if ((offsets[x] < 0) || (lengths[x] < 0) || (start + (long)offsets[x] + lengths[x] > bytes.length)) {
+				throw new IOException("Bad options store entry " + ids[x]);
+			}
+			contents.mods.put(ids[x], Arrays.copyOfRange(bytes, start + offsets[x], start + offsets[x] + lengths[x]));
+		}
+	}
+
+	/**
+	* Move a mod's own file into its store.  The file is deleted once the
+	* store has been written.  Called with the stores lock held.
+	*
+	* @param	file			The mod's own .moapi file
+	* @param	store			Store file
+	* @param	contents	Contents of the store
+	* @return	The mod's options as stored, or null if it has no file
+	* @throws	IOException	If the file could not be read
+	*/
+	private static byte[] migrate(final File file, final File store, Contents contents) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		byte[] data = Files.readAllBytes(file.toPath());
+		put(store, contents, getModID(file), data, null);
+		ModOptionsWriter.execute(new Runnable() {
+			public void run() {
+				if (ModOptionsWriter.flush(store)) {
+					file.delete();
+					ModOptionsCache.invalidate(file);
+				}
+			}
+		});
+		return data;
+	}
+
+	//==============
+	// Writing
+	//==============
+
+	/**
+	* Queue a mod's options to be written to its store
+	*
+	* @param	file			The mod's own .moapi file
+	* @param	data			Options of the mod, as its own file would hold them
+	* @param	onFailure	Run on the I/O thread if the write fails, may be null
+	*/
+	public static void write(File file, byte[] data, Runnable onFailure) {
+		File store = getStoreFile(file);
+		synchronized (stores) {
+			Contents contents;
+			try {
+				contents = getContents(store);
+			} catch (IOException e) {
+				System.err.println("(ModOptionsAPI): Could not read " + store.getPath() + ", it will be replaced: " + e.getMessage());
+				contents = new Contents();
+				stores.put(store, contents);
+			}
+			put(store, contents, getModID(file), data, onFailure);
+		}
+	}
+
+	/**
+	* Change a mod's options in a store and queue the store to be written.
+	* Called with the stores lock held, so writes are queued in order.
+	*
+	* @param	store			Store file
+	* @param	contents	Contents of the store
+	* @param	id				Id of the mod
+	* @param	data			Options of the mod
+	* @param	onFailure	Run on the I/O thread if the write fails, may be null
+	*/
+	private static void put(File store, Contents contents, String id, byte[] data, Runnable onFailure) {
+		// Once the last write has gone out, only mods changed since are unwritten
+		if (!ModOptionsWriter.isPending(store)) {
+			contents.unwritten.clear();
+		}
+		contents.unwritten.add(id);
+		contents.mods.put(id, data);
+		contents.parsed.remove(id);
+		contents.written = true;
+		ModOptionsWriter.write(store, build(contents), onFailure);
+	}
+
+	/**
+	* Build a store file
+	*
+	* @param	contents	Options of each mod
+	* @return	Contents of the file
+	*/
+	private static byte[] build(Contents contents) {
+		try {
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(file);
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(contents.mods.size());
+			for (Map.Entry<String, byte[]> entry : contents.mods.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+			out.close();
+			return file.toByteArray();
+		} catch (IOException e) {
+			// Only in-memory streams are used
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	* Read a store again after it was changed by another program.  Mods
+	* changed in game and not yet written keep their options, and the
+	* waiting write is rebuilt around the edited file, every other mod
+	* takes its options from the file.
+	*
+	* @param	store	Store file
+	* @return	Ids of the mods whose options were changed by the edit
+	*/
+	public static Set<String> invalidate(File store) {
+		synchronized (ModOptionsWriter.ioLock) {
+			synchronized (stores) {
+				Contents held = stores.remove(store);
+				Contents contents;
+				try {
+					contents = getContents(store);
+				} catch (IOException e) {
+					System.err.println("(ModOptionsAPI): Could not read " + store.getPath() + ": " + e.getMessage());
+					if (held != null) {
+						stores.put(store, held);
+					}
+					return Collections.emptySet();
+				}
+				Set<String> edited = new HashSet<String>(contents.mods.keySet());
+				if (held == null) {
+					return edited;
+				}
+				for (Map.Entry<String, byte[]> entry : held.mods.entrySet()) {
+					if (Arrays.equals(entry.getValue(), contents.mods.get(entry.getKey()))) {
+						edited.remove(entry.getKey());
+					} else {
+						edited.add(entry.getKey());
+					}
+				}
+				// The write waiting was built before the edit, never let it replace the file
+				if (ModOptionsWriter.isPending(store) && !held.unwritten.isEmpty()) {
+					for (String id : held.unwritten) {
+						contents.mods.put(id, held.mods.get(id));
+						edited.remove(id);
+					}
+					contents.unwritten.addAll(held.unwritten);
+					contents.written = true;
+					ModOptionsWriter.write(store, build(contents), null);
+				}
+				return edited;
+			}
+		}
+	}
+
+	/**
+	* Options of every mod in a store
+	*/
+	private static class Contents {
+		/** Size of the file when read */
+		private long size = 0;
+		/** Modified time of the file when read */
+		private long modified = 0;
+		/** True once changed here, after which the file is not read again */
+		private boolean written = false;
+		/** Options of each mod as stored, in file order */
+		private final LinkedHashMap<String, byte[]> mods = new LinkedHashMap<String, byte[]>();
+		/** Mods changed here since the file was last written */
+		private final HashSet<String> unwritten = new HashSet<String>();
+		/** Options already parsed, by mod id */
+		private final HashMap<String, ModOptionsIndex> parsed = new HashMap<String, ModOptionsIndex>();
+	}
+}
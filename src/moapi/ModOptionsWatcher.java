@@ -0,0 +1,292 @@
+package moapi;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Reloads option files when they are changed by another program, such as
+* a script editing the files of a running server.  The folders holding
+* the files of loaded mods are watched, and once a changed file has been
+* quiet for a short while it is read again and only the options whose
+* value differs are set, so only their callbacks are called.
+*
+* Watching is turned on with watch=true in config/moapi.properties.  A
+* file is watched for the world it was last loaded for.  Changes made in
+* game that have not been written yet win over changes made outside, but
+* those already journalled are dropped in favour of the edited file.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsWatcher {
+	/**
+	* Default milliseconds a file must be quiet for before it is reloaded
+	*/
+	public static final int DEFAULT_DELAY = 500;
+
+	/**
+	* Watched files and the mods and worlds they hold options for
+	*/
+	private static final HashMap<Path, List<WatchedFile>> files = new HashMap<Path, List<WatchedFile>>();
+
+	/**
+	* File currently watched for each mod and scope
+	*/
+	private static final HashMap<String, Path> mods = new HashMap<String, Path>();
+
+	/**
+	* Watched folders by their registration
+	*/
+	private static final HashMap<WatchKey, Path> folders = new HashMap<WatchKey, Path>();
+
+	/**
+	* Changed files and the time they may be reloaded at
+	*/
+	private static final HashMap<Path, Long> changed = new HashMap<Path, Long>();
+
+	/**
+	* Service reporting changes, null while not watching
+	*/
+	private static WatchService service = null;
+
+	//==============
+	// Watching
+	//==============
+
+	/**
+	* Check if option files are watched for changes
+	*
+	* @return	True if watching is turned on
+	*/
+	public static boolean isEnabled() {
+		return ModOptionsConfig.getBoolean(ModOptionsConfig.WATCH, false);
+	}
+
+	/**
+	* Watch the file a mod's options were just loaded from, in place of any
+	* file it was loaded from before for the same scope
+	*
+	* @param	options		Top level options of the mod
+	* @param	worldName	Name of world/ server loaded for, blank for global
+	*/
+	static void track(ModOptions options, String worldName) {
+		if (!isEnabled()) {
+			return;
+		}
+		File file = ModOptionsAPI.getStore().getWatchFile(options, worldName);
+		if (file == null) {
+			return;
+		}
+		Path path = file.toPath().toAbsolutePath().normalize();
+		String key = options.getID() + ((worldName.length()==0) ? "/global" : "/local");
+		WatchedFile watched = new WatchedFile(options, worldName);
+		synchronized (files) {
+			Path old = mods.put(key, path);
+			if (old != null) {
+				files.get(old).remove(watched);
+				if (files.get(old).isEmpty()) {
+					files.remove(old);
+				}
+			}
+			List<WatchedFile> list = files.get(path);
+			if (list == null) {
+				list = new ArrayList<WatchedFile>();
+				files.put(path, list);
+			}
+			list.add(watched);
+			try {
+				if (service == null) {
+					start();
+				}
+				Path folder = path.getParent();
+				if (!folders.containsValue(folder)) {
+					folders.put(folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), folder);
+				}
+			} catch (IOException e) {
+				System.err.println("(ModOptionsAPI): Could not watch " + path.getParent() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	* Stop watching all files
+	*/
+	public static void stop() {
+		synchronized (files) {
+			if (service != null) {
+				try {
+					service.close();
+				} catch (IOException ignored) {}
+				service = null;
+			}
+			files.clear();
+			mods.clear();
+			folders.clear();
+		}
+		synchronized (changed) {
+			changed.clear();
+		}
+	}
+
+	/**
+	* Start the watch service and the thread reading it.  Called with
+	* the files lock held.
+	*
+	* @throws	IOException	If the service could not be created
+	*/
+	private static void start() throws IOException {
+		final WatchService watching = FileSystems.getDefault().newWatchService();
+		service = watching;
+		Thread thread = new Thread("MOAPI Watcher") {
+			public void run() {
+				try {
+					while (true) {
+						long wait = nextDue();
+						WatchKey key = (wait == Long.MAX_VALUE) ? watching.take() : watching.poll(wait, TimeUnit.MILLISECONDS);
+						if (key != null) {
+							readEvents(key);
+						}
+						reloadDue();
+					}
+				} catch (ClosedWatchServiceException e) {
+					// Stopped
+				} catch (InterruptedException e) {
+					// Stopped
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	* Note the watched files a folder reported as changed
+	*
+	* @param	key	Registration of the folder
+	*/
+	private static void readEvents(WatchKey key) {
+		Path folder;
+		synchronized (files) {
+			folder = folders.get(key);
+		}
+		List<WatchEvent<?>> events = key.pollEvents();
+		key.reset();
+		if (folder == null) {
+			return;
+		}
+		long due = System.currentTimeMillis() + ModOptionsConfig.getInt(ModOptionsConfig.WATCH_DELAY, DEFAULT_DELAY);
+		synchronized (files) {
+			for (WatchEvent<?> event : events) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					// Events were lost, check every file in the folder
+					for (Path path : files.keySet()) {
+						if (path.getParent().equals(folder)) {
+							markChanged(path, due);
+						}
+					}
+				} else {
+					Path path = folder.resolve((Path)event.context());
+					if (files.containsKey(path)) {
+						markChanged(path, due);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	* Put off reloading a file until it has been quiet for a while
+	*
+	* @param	path	Changed file
+	* @param	due		Time the file may be reloaded at
+	*/
+	private static void markChanged(Path path, long due) {
+		synchronized (changed) {
+			changed.put(path, due);
+		}
+	}
+
+	/**
+	* Get the time until the next changed file may be reloaded
+	*
+	* @return	Milliseconds to wait for further events, Long.MAX_VALUE if none are waiting
+	*/
+	private static long nextDue() {
+		long next = Long.MAX_VALUE;
+		synchronized (changed) {
+			for (Long due : changed.values()) {
+				next = Math.min(next, due);
+			}
+		}
+		if (next == Long.MAX_VALUE) {
+			return next;
+		}
+		return Math.max(1, next - System.currentTimeMillis());
+	}
+
+	/**
+	* Reload the changed files which have been quiet long enough
+	*/
+	private static void reloadDue() {
+		List<Path> due = new ArrayList<Path>();
+		long now = System.currentTimeMillis();
+		synchronized (changed) {
+			Iterator<Map.Entry<Path, Long>> iterator = changed.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<Path, Long> entry = iterator.next();
+				if (entry.getValue() <= now) {
+					due.add(entry.getKey());
+					iterator.remove();
+				}
+			}
+		}
+		for (Path path : due) {
+			List<WatchedFile> watched;
+			synchronized (files) {
+				if (!files.containsKey(path)) {
+					continue;
+				}
+				watched = new ArrayList<WatchedFile>(files.get(path));
+			}
+			// Our own writes need no reload
+			if (ModOptionsWriter.isOwnWrite(path.toFile())) {
+				continue;
+			}
+			// Size and time may not show an edit made within the same second
+			ModOptionsAPI.getStore().invalidate(path.toFile());
+			for (WatchedFile file : watched) {
+				ModOptionsLoader.loadAsync(file.options, file.worldName, true);
+			}
+		}
+	}
+
+	/**
+	* The mod and world a watched file holds options for
+	*/
+	private static class WatchedFile {
+		/** Top level options of the mod */
+		private final ModOptions options;
+		/** World/ server the file was loaded for, blank for global */
+		private final String worldName;
+
+		private WatchedFile(ModOptions options, String worldName) {
+			this.options = options;
+			this.worldName = worldName;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof WatchedFile)) {
+				return false;
+			}
+			WatchedFile file = (WatchedFile)other;
+			return (file.options == options) && file.worldName.equals(worldName);
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(options) ^ worldName.hashCode();
+		}
+	}
+}
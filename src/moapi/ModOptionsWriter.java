@@ -0,0 +1,315 @@
+package moapi;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Writes option files in the background.  Saves of the same file made
+* within a short window are merged into one write, and every write goes
+* to a temporary file which is synced and then renamed over the old one,
+* so a crash never leaves a mod without its options file.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class ModOptionsWriter {
+	/**
+	* Milliseconds to wait for further saves of a file before writing it
+	*/
+	private static long delay = 250;
+
+	/**
+	* Writes waiting to go to disk, keyed by target file
+	*/
+	private static final HashMap<File, PendingWrite> pending = new HashMap<File, PendingWrite>();
+
+	/**
+	* Files whose last write failed, guarded by the pending lock
+	*/
+	private static final HashSet<File> failed = new HashSet<File>();
+
+	/**
+	* Held while a file is taken from the pending set and written, so that
+	* writes of the same file can never overtake each other
+	*/
+	static final Object ioLock = new Object();
+
+	/**
+	* Size and modified time of each file as last written here, so changes
+	* made by other programs can be told apart from our own writes
+	*/
+	private static final HashMap<Path, long[]> written = new HashMap<Path, long[]>();
+
+	/**
+	* The I/O thread
+	*/
+	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "MOAPI Writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("MOAPI Writer Shutdown") {
+			public void run() {
+				flush();
+				// Journalled changes are written after the files they apply over
+				ModOptionsJournal.flush();
+			}
+		});
+	}
+
+	//==============
+	// Writing
+	//==============
+
+	/**
+	* Queue the contents of a file to be written.  If a write of the same
+	* file is already waiting it is replaced by this one.
+	*
+	* @param	file	File to write
+	* @param	data	Complete new contents of the file
+	*/
+	public static void write(File file, byte[] data) {
+		write(file, data, null);
+	}
+
+	/**
+	* Queue the contents of a file to be written.  If a write of the same
+	* file is already waiting it is replaced by this one, and the failure
+	* tasks of both are run if the write fails.
+	*
+	* @param	file			File to write
+	* @param	data			Complete new contents of the file
+	* @param	onFailure	Run on the I/O thread if the write fails, may be null
+	*/
+	public static void write(final File file, byte[] data, Runnable onFailure) {
+		synchronized (pending) {
+			PendingWrite replaced = pending.get(file);
+			pending.put(file, new PendingWrite(data, onFailure, replaced));
+			if (replaced != null) {
+				return;
+			}
+		}
+		executor.schedule(new Runnable() {
+			public void run() {
+				flush(file);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	* Write a file now if it has a write waiting
+	*
+	* @param	file	File to write
+	* @return	False if the write failed, or the last one did if none was waiting
+	*/
+	public static boolean flush(File file) {
+		synchronized (ioLock) {
+			PendingWrite write;
+			synchronized (pending) {
+				write = pending.remove(file);
+				if (write == null) {
+					return !failed.contains(file);
+				}
+			}
+			return write.writeTo(file);
+		}
+	}
+
+	/**
+	* Check if a file has a write waiting
+	*
+	* @param	file	File to check
+	* @return	True if the file is waiting to be written
+	*/
+	public static boolean isPending(File file) {
+		synchronized (pending) {
+			return pending.containsKey(file);
+		}
+	}
+
+	/**
+	* Write every waiting file now
+	*/
+	public static void flush() {
+		synchronized (ioLock) {
+			Map<File, PendingWrite> writes;
+			synchronized (pending) {
+				writes = new HashMap<File, PendingWrite>(pending);
+				pending.clear();
+			}
+			for (Map.Entry<File, PendingWrite> entry : writes.entrySet()) {
+				entry.getValue().writeTo(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	* Run a task on the I/O thread, in order with the writes
+	*
+	* @param	task	Task to run
+	*/
+	static void execute(final Runnable task) {
+		executor.execute(new Runnable() {
+			public void run() {
+				synchronized (ioLock) {
+					task.run();
+				}
+			}
+		});
+	}
+
+	/**
+	* Get a future which completes once a mod's saved values are on disk.
+	* They are written after the usual delay, or sooner if flushed.
+	*
+	* @param	options		Options of the mod, or one of its sub menus
+	* @param	worldName	Name of world/ server saved for, blank for global
+	* @return	Completed with the given options once they are written, or
+	*					with an IOException if they could not be
+	*/
+	static Future<ModOptions> whenWritten(final ModOptions options, final String worldName) {
+		return executor.schedule(new Callable<ModOptions>() {
+			public ModOptions call() throws IOException {
+				synchronized (ioLock) {
+					// Files are written for the whole mod
+					if (!ModOptionsAPI.getStore().flush(options.getTopLevel(), worldName)) {
+						throw new IOException("Could not write options for " + options.getTopLevel().getID());
+					}
+				}
+				return options;
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	* Safely replace the contents of a file, dropping any cached copy
+	*
+	* @param	file	File to write
+	* @param	data	New contents
+	* @return	True if the file was written
+	*/
+	static boolean writeFile(File file, byte[] data) {
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(data);
+				out.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			// A rewrite of the same size within the clock's resolution would look unchanged
+			ModOptionsCache.invalidate(file);
+			synchronized (written) {
+				written.put(getKey(file), new long[] {file.length(), file.lastModified()});
+			}
+			return true;
+		} catch (IOException e) {
+			System.err.println("(ModOptionsAPI): Could not save options to " + file.getName() + ": " + e.getMessage());
+			temp.delete();
+			return false;
+		}
+	}
+
+	/**
+	* Check if a file is as this writer last left it
+	*
+	* @param	file	File to check
+	* @return	True if the file was last written here, false if another program changed it
+	*/
+	static boolean isOwnWrite(File file) {
+		long[] state;
+		synchronized (written) {
+			state = written.get(getKey(file));
+		}
+		return (state != null) && (state[0] == file.length()) && (state[1] == file.lastModified());
+	}
+
+	/**
+	* Get the key a file's last write is kept under
+	*
+	* @param	file	File written
+	* @return	Absolute path of the file
+	*/
+	private static Path getKey(File file) {
+		return file.toPath().toAbsolutePath().normalize();
+	}
+
+	/**
+	* A write waiting to go to disk
+	*/
+	private static class PendingWrite {
+		/** New file contents */
+		private final byte[] data;
+		/** Run if the write fails, including those of the writes this replaced */
+		private final ArrayList<Runnable> onFailure = new ArrayList<Runnable>(1);
+
+		private PendingWrite(byte[] data, Runnable onFailure, PendingWrite replaced) {
+			this.data = data;
+			if (replaced != null) {
+				this.onFailure.addAll(replaced.onFailure);
+			}
+			if (onFailure != null) {
+				this.onFailure.add(onFailure);
+			}
+		}
+
+		/**
+		* Write the contents, reporting a failure
+		*
+		* @param	file	File to write
+		* @return	True if the file was written
+		*/
+		private boolean writeTo(File file) {
+			boolean written = writeFile(file, data);
+			synchronized (pending) {
+				if (written) {
+					failed.remove(file);
+				} else {
+					failed.add(file);
+				}
+			}
+			if (!written) {
+				for (Runnable task : onFailure) {
+					task.run();
+				}
+			}
+			return written;
+		}
+	}
+
+	//==============
+	// Settings
+	//==============
+
+	/**
+	* Set how long to wait for further saves of a file before writing it
+	*
+	* @param	millis	Delay in milliseconds, 0 to write as soon as possible
+	*/
+	public static void setDelay(long millis) {
+		delay = Math.max(0, millis);
+	}
+
+	/**
+	* Get how long saves wait before being written
+	*
+	* @return	Delay in milliseconds
+	*/
+	public static long getDelay() {
+		return delay;
+	}
+}
@@ -0,0 +1,86 @@
+package moapi;
+
+/**
+* The layers an option's value can come from, from least to most
+* specific.  An option uses the value of the most specific layer that has
+* one: a dimension value for the current dimension, then its world value
+* if it is not using the global value, then a server-wide value, then its
+* global value.
+*
+* Global and world values are an option's usual saved values.  The other
+* layers are held in memory, keyed by the context they apply in, and an
+* option works its value out from the layers in the order declared here,
+* so a new layer only needs adding to this list.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public enum OptionScope {
+	/** Value for the whole install, kept in the config folder */
+	GLOBAL(Boolean.TRUE, false),
+	/** Value set for every world on a server */
+	SERVER(null, false),
+	/** Value for one world or server, kept with the world */
+	WORLD(Boolean.FALSE, false),
+	/** Value for one dimension of a world */
+	DIMENSION(null, true) {
+		String getContext() {
+			return ModOptionsAPI.getDimension();
+		}
+	};
+
+	/**
+	* Scope flag of the saved value this layer is, null for a layer held in
+	* memory
+	*/
+	private final Boolean saved;
+
+	/**
+	* True if a held layer has one value per context
+	*/
+	private final boolean contextual;
+
+	private OptionScope(Boolean saved, boolean contextual) {
+		this.saved = saved;
+		this.contextual = contextual;
+	}
+
+	/**
+	* Get the saved value this layer is
+	*
+	* @return	True for global, false for world, null for a layer held in memory
+	*/
+	Boolean getSaved() {
+		return saved;
+	}
+
+	/**
+	* Get the context values of this layer currently apply in
+	*
+	* @return	Name of the context, null if there is none
+	*/
+	String getContext() {
+		return "";
+	}
+
+	/**
+	* Get the key a held value is kept under
+	*
+	* @param	context	Context of the value, ignored unless the layer has one value per context
+	* @return	Key of the value
+	*/
+	String getKey(String context) {
+		return (contextual) ? name() + ":" + context : name();
+	}
+
+	/**
+	* Get the key of the held value that currently applies
+	*
+	* @return	Key of the value, null if no context applies
+	*/
+	String getCurrentKey() {
+		String context = getContext();
+		return (context == null) ? null : getKey(context);
+	}
+}
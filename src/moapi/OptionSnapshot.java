@@ -0,0 +1,247 @@
+package moapi;
+
+import java.util.*;
+
+/**
+* An unchanging copy of the value every registered option is using.  A
+* thread reading options while another edits them, such as the server
+* tick thread while the options window is open, sees every value from one
+* moment without locking.  Reading a value from a snapshot allocates
+* nothing.
+*
+* Changes are only noted as they happen, with the value at that moment.
+* A new snapshot is built the first time one is asked for after values
+* changed, so changes cost no copying while no one reads snapshots, and
+* many changes between reads are copied in one go.
+*
+* Options are given a slot in the snapshots when their mod is
+* registered, taking the slot of an option they replace.  Changes made
+* during a load are noted together once the load is done.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class OptionSnapshot {
+	/**
+	* The latest snapshot
+	*/
+	private static volatile OptionSnapshot current = new OptionSnapshot(new int[0], new Object[0], 0);
+
+	/**
+	* Registered options by slot
+	*/
+	private static final ArrayList<ModOption> slots = new ArrayList<ModOption>();
+
+	/**
+	* Slots of options no longer registered, handed out again first
+	*/
+	private static final ArrayDeque<Integer> free = new ArrayDeque<Integer>();
+
+	/**
+	* Values of the options changed or registered since the latest
+	* snapshot, as they were when noted
+	*/
+	private static final LinkedHashMap<ModOption, Object> changed = new LinkedHashMap<ModOption, Object>();
+
+	/**
+	* True when the latest snapshot is out of date, read without locking by get
+	*/
+	private static volatile boolean stale = false;
+
+	/**
+	* Values of int and boolean options by slot, booleans as 1 or 0
+	*/
+	private final int[] ints;
+
+	/**
+	* Values of every option by slot
+	*/
+	private final Object[] values;
+
+	/**
+	* Number of snapshots published before this one
+	*/
+	private final long version;
+
+	private OptionSnapshot(int[] ints, Object[] values, long version) {
+		this.ints = ints;
+		this.values = values;
+		this.version = version;
+	}
+
+	//==============
+	// Getters
+	//==============
+
+	/**
+	* Get the latest snapshot
+	*
+	* @return	Values of every registered option
+	*/
+	public static OptionSnapshot get() {
+		if (stale) {
+			publish();
+		}
+		return current;
+	}
+
+	/**
+	* Get the value of an int option, such as a slider
+	*
+	* @param	option	Option to read
+	* @return	Value the option was using
+	*/
+	public int getInt(ModOptionInt option) {
+		int slot = option.getSlot();
+		return ((slot >= 0) && (slot < ints.length)) ? ints[slot] : option.getInt();
+	}
+
+	/**
+	* Get the value of a boolean option
+	*
+	* @param	option	Option to read
+	* @return	Value the option was using
+	*/
+	public boolean getBoolean(ModOptionBoolean option) {
+		int slot = option.getSlot();
+		return ((slot >= 0) && (slot < ints.length)) ? (ints[slot] != 0) : option.getBoolean();
+	}
+
+	/**
+	* Get the value of any option
+	*
+	* @param	option	Option to read
+	* @return	Value the option was using
+	*/
+	public Object getValue(ModOption option) {
+		int slot = option.getSlot();
+		return ((slot >= 0) && (slot < values.length)) ? values[slot] : option.getValue();
+	}
+
+	/**
+	* Get the value of an option by its full path
+	*
+	* @param	path	Mod id, sub menu ids and option id, separated by '/'
+	* @return	Value the option was using, or null if there is no such option
+	*/
+	public Object getValue(String path) {
+		ModOption option = ModOptionsRegistry.get(path);
+		return (option == null) ? null : getValue(option);
+	}
+
+	/**
+	* Get the number of snapshots published before this one, so a reader
+	* can tell if anything changed since it last looked
+	*
+	* @return	Version of this snapshot
+	*/
+	public long getVersion() {
+		return version;
+	}
+
+	//==============
+	// Publishing
+	//==============
+
+	/**
+	* Give a registered option a slot in the snapshots, reusing the slot of
+	* an option no longer registered if there is one
+	*
+	* @param	option	Option registered
+	*/
+	static synchronized void register(ModOption option) {
+		if (option.getSlot() >= 0) {
+			return;
+		}
+		Integer slot = free.poll();
+		if (slot == null) {
+			option.setSlot(slots.size());
+			slots.add(option);
+		} else {
+			option.setSlot(slot);
+			slots.set(slot, option);
+		}
+		note(option);
+	}
+
+	/**
+	* Take the slot of an option that is no longer registered, such as one
+	* replaced by registering another with the same id.  The option is read
+	* directly from then on.
+	*
+	* @param	option	Option removed
+	*/
+	static synchronized void release(ModOption option) {
+		int slot = option.getSlot();
+		if ((slot < 0) || (slots.get(slot) != option)) {
+			return;
+		}
+		option.setSlot(-1);
+		slots.set(slot, null);
+		changed.remove(option);
+		free.push(slot);
+	}
+
+	/**
+	* Note that options changed, to be copied into the next snapshot
+	*
+	* @param	options	Options whose value or scope changed
+	*/
+	static synchronized void changed(Collection<? extends ModOption> options) {
+		for (ModOption option : options) {
+			if (option.getSlot() >= 0) {
+				note(option);
+			}
+		}
+	}
+
+	/**
+	* Note the value an option is using now.  Called with the class locked.
+	*
+	* @param	option	Option with a slot
+	*/
+	private static void note(ModOption option) {
+		changed.put(option, (option instanceof ModOptions) ? null : option.getValue());
+		stale = true;
+	}
+
+	/**
+	* Publish a snapshot holding the current values of the options changed
+	* since the last one
+	*/
+	private static synchronized void publish() {
+		if (!stale) {
+			return;
+		}
+		OptionSnapshot old = current;
+		int size = slots.size();
+		int[] ints = Arrays.copyOf(old.ints, size);
+		Object[] values = Arrays.copyOf(old.values, size);
+		for (Map.Entry<ModOption, Object> entry : changed.entrySet()) {
+			fill(entry.getKey(), entry.getValue(), ints, values);
+		}
+		changed.clear();
+		current = new OptionSnapshot(ints, values, old.version + 1);
+		// Cleared after, so a reader that sees it cleared sees the new snapshot
+		stale = false;
+	}
+
+	/**
+	* Copy a noted value into an option's slot
+	*
+	* @param	option	Option to copy
+	* @param	value		Value the option was using
+	* @param	ints		Int values to fill
+	* @param	values	Values to fill
+	*/
+	private static void fill(ModOption option, Object value, int[] ints, Object[] values) {
+		int slot = option.getSlot();
+		if (value instanceof Integer) {
+			ints[slot] = (Integer)value;
+		} else if (value instanceof Boolean) {
+			ints[slot] = ((Boolean)value) ? 1 : 0;
+		}
+		values[slot] = value;
+	}
+}
@@ -0,0 +1,69 @@
+package moapi;
+
+import java.io.*;
+
+/**
+* Where option values are kept between games.  The store in use is
+* chosen with the store setting in config/moapi.properties, or set by
+* a mod with ModOptionsAPI.setStore.  Every method may be called from
+* any thread.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public interface OptionStore {
+	/**
+	* Read the stored values of a mod
+	*
+	* @param	options		Top level options of the mod
+	* @param	worldName	Name of world/ server to read for, blank for global
+	* @return	Stored values, shared and not to be modified.  Empty if the mod has none.
+	* @throws	IOException	If the values could not be read
+	*/
+	public ModOptionsIndex read(ModOptions options, String worldName) throws IOException;
+
+	/**
+	* Store every value of a mod.  The values may be written later.
+	*
+	* @param	options		Top level options of the mod
+	* @param	worldName	Name of world/ server to save for, blank for global
+	* @param	onFailure	Run if the values could not be written, may be null
+	*/
+	public void save(ModOptions options, String worldName, Runnable onFailure);
+
+	/**
+	* Store a single changed value, if the store can do so cheaply
+	*
+	* @param	option	Option that changed, which belongs to a menu
+	* @param	scope		Scope value. True for global
+	* @return	True if the change was stored, false if the mod must be saved
+	*/
+	public boolean record(ModOption option, boolean scope);
+
+	/**
+	* Write anything waiting to be written for a mod
+	*
+	* @param	options		Top level options of the mod
+	* @param	worldName	Name of world/ server, blank for global
+	* @return	False if something could not be written
+	*/
+	public boolean flush(ModOptions options, String worldName);
+
+	/**
+	* Get the file to watch for changes made by other programs
+	*
+	* @param	options		Top level options of the mod
+	* @param	worldName	Name of world/ server, blank for global
+	* @return	File holding the mod's values, or null if it can not be edited
+	*/
+	public File getWatchFile(ModOptions options, String worldName);
+
+	/**
+	* Forget anything held in memory for a file that was changed by another
+	* program
+	*
+	* @param	file	File returned by getWatchFile
+	*/
+	public void invalidate(File file);
+}
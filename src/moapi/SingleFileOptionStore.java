@@ -0,0 +1,36 @@
+package moapi;
+
+import java.io.*;
+
+/**
+* Keeps the values of every mod for a world in one file, see
+* ModOptionsStore.  Chosen with store=single.
+*
+* @author   Jonathan Brazell
+* @version	1.5
+* @since    1.5
+*/
+public class SingleFileOptionStore extends FileOptionStore {
+	public File getWatchFile(ModOptions options, String worldName) {
+		return ModOptionsStore.getStoreFile(options.getFile(worldName));
+	}
+
+	public void invalidate(File file) {
+		// Older changes of the edited mods must not be replayed over the edit
+		for (String id : ModOptionsStore.invalidate(file)) {
+			ModOptionsJournal.discard(ModOptionsStore.getModFile(file, id));
+		}
+	}
+
+	protected ModOptionsIndex readBase(File file, ModOptions options) throws IOException {
+		return ModOptionsStore.read(file);
+	}
+
+	protected void writeBase(File file, byte[] data, Runnable onFailure) {
+		ModOptionsStore.write(file, data, onFailure);
+	}
+
+	protected boolean flushBase(File file) {
+		return ModOptionsWriter.flush(ModOptionsStore.getStoreFile(file));
+	}
+}
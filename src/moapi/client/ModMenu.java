@@ -98,6 +98,8 @@ public class ModMenu extends GuiScreen {
 	}
 	
   public void initGui() {
+		// Values must be in place before they are shown
+		ModOptionsAPI.awaitLoads();
 		if (modOptions == null) {
 			// Load only relevant mods
 			ModOptions[] options = new ModOptions[0];
@@ -664,13 +666,7 @@ public class ModMenu extends GuiScreen {
 				option.setGlobal(false);
 			}
 			if (option instanceof ModOptionMulti) {
-    		if (worldMode) {
-    			String nextVal = ((ModOptionMulti)option).getNextValue(((ModOptionMulti)option).getLocalValue());
-    			option.setLocalValue(nextVal);
-    		} else {
-    			String nextVal = ((ModOptionMulti)option).getNextValue(((ModOptionMulti)option).getGlobalValue());
-    			option.setGlobalValue(nextVal);
-    		}
+    		((ModOptionMulti)option).selectNext(!worldMode);
       } else if (option instanceof ModOptionBoolean) {
     		if (worldMode) {
     			option.setLocalValue(!((ModOptionBoolean)option).getLocalValue());
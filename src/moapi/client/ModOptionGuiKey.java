@@ -43,7 +43,7 @@ public class ModOptionGuiKey extends ModOptionButton {
 	* @return	Character for this field
 	*/
 	private int getKey() {
-		return ((int)((ModOptionKey)option).getValue(!worldMode));
+		return ((ModOptionKey)option).getInt(!worldMode);
 	}
 	
 	/**
@@ -59,7 +59,7 @@ public class ModOptionGuiKey extends ModOptionButton {
 			} else if (!ModOptionKey.isKeyBound(i)) {
 				setKey(i);
 				setFocused(false);
-			} else if (i==((ModOptionKey)option).getValue(!worldMode)) {
+			} else if (i==((ModOptionKey)option).getInt(!worldMode)) {
 				setFocused(false);
 			}
 		}
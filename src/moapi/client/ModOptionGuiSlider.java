@@ -38,9 +38,9 @@ public class ModOptionGuiSlider extends ModOptionButton {
 	private float getInternalValue(ModOptionSlider option) {
 		float val;
 		if (worldMode) {
-			val = option.getLocalValue();
+			val = option.getInt(false);
 		} else {
-		  val = option.getGlobalValue();
+		  val = option.getInt(true);
 		}
 		val = transformValue(val, 0, 1);
 		return val;
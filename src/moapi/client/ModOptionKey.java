@@ -1,6 +1,6 @@
 package moapi.client;
 
-import java.util.Hashtable;
+import java.util.*;
 import java.util.prefs.InvalidPreferencesFormatException;
 import org.lwjgl.input.Keyboard;
 import net.minecraft.src.*;
@@ -15,14 +15,37 @@ import moapi.*;
 * @version	0.9.1
 * @since 	0.7
 */
-public class ModOptionKey extends ModOption<Integer> {
+public class ModOptionKey extends ModOptionInt {
 	/**
-	* Current key bindings, implemented as a single value due to the
-	* fact that keys can only have one configuration per world
+	* Current key bindings by key code, index 0 for local values and 1 for
+	* global values.  A key can only be bound to one option.
 	*
-	* @since 	0.7
+	* @since 	1.5
+	*/
+	private static final ModOptionKey[][] bindings = new ModOptionKey[2][Keyboard.KEYBOARD_SIZE];
+
+	/**
+	* Keys bound in either scope, watched by pollKeys
+	*
+	* @since 	1.5
+	*/
+	private static volatile int[] boundKeys = new int[0];
+
+	/**
+	* Keys that were down when last polled
+	*
+	* @since 	1.5
 	*/
-	private static Hashtable<Integer, ModOption> bindings = new Hashtable<Integer, ModOption>();
+	private static final boolean[] down = new boolean[Keyboard.KEYBOARD_SIZE];
+
+	/**
+	* Number of keys marked down, so nothing is checked under a screen once
+	* they have all been released
+	*
+	* @since 	1.5
+	*/
+	private static int held = 0;
+
 	/**
 	* The default Integer
 	*
@@ -68,20 +91,35 @@ public class ModOptionKey extends ModOption<Integer> {
 	* @param	value		New value
 	*/
 	public ModOption setValue(int value, boolean scope) {
-		int curVal = getValue(scope);
-		if (value == defaultVal) {
-			// Dead branch (CBA to refactor)
-			bindings.remove(value);
-			super.setValue(value, scope);
-		} else if ((getLocalValue()==value && !scope) || (getGlobalValue()==value && scope) || (!isKeyBound(value))) {
-			// Remove old value if it exists
-			if (bindings.containsKey(curVal)) {
-				bindings.remove(curVal);
+		synchronized (bindings) {
+			// Keys bound to another option are refused
+			if (isKeyBound(value) && !isBoundTo(value, this)) {
+				return this;
 			}
-			super.setValue(value, scope);
-			bindings.put(value, this);
+			int curVal = getInt(scope);
+			int index = (scope) ? 1 : 0;
+			if (isTracked(curVal) && (bindings[index][curVal] == this)) {
+				bindings[index][curVal] = null;
+			}
+			if (isTracked(value) && (value != defaultVal)) {
+				bindings[index][value] = this;
+			}
+			updateBoundKeys();
 		}
-		return this;
+		return setInt(value, scope);
+	}
+
+	/**
+	* Set the current value used for the given scope, going through the
+	* key bindings like setValue(int, boolean)
+	*
+	* @since	1.5
+	* @param	value	New value for scope
+	* @param	scope	Scope value. True for global
+	* @return  the option for further operations
+	*/
+	public ModOption setValue(Integer value, boolean scope) {
+		return setValue(value.intValue(), scope);
 	}
 	
 	/**
@@ -93,7 +131,24 @@ public class ModOptionKey extends ModOption<Integer> {
 	* @return  the option for further operations  	
 	*/
 	public ModOption fromString(String strValue, boolean scope) {
-		return setValue(Integer.valueOf(strValue), scope);
+		return setValue(Integer.parseInt(strValue), scope);
+	}
+
+	/**
+	* Collect the keys bound in either scope.  Called with the bindings
+	* lock held.
+	*
+	* @since 	1.5
+	*/
+	private static void updateBoundKeys() {
+		int count = 0;
+		int[] keys = new int[Keyboard.KEYBOARD_SIZE];
+		for (int key = 0; key < Keyboard.KEYBOARD_SIZE; key++) {
+			if ((bindings[0][key] != null) || (bindings[1][key] != null)) {
+				keys[count++] = key;
+			}
+		}
+		boundKeys = Arrays.copyOf(keys, count);
 	}
 
 	//==============
@@ -103,12 +158,122 @@ public class ModOptionKey extends ModOption<Integer> {
 	/**
 	* Check if a key is already bound
 	*
+	* @since 	1.5
+	* @param	c	Key code to check
+	* @return	True if already bound
+	*/
+	public static boolean isKeyBound(int c) {
+		return (c != defaultVal) && isTracked(c) && ((bindings[0][c] != null) || (bindings[1][c] != null));
+	}
+
+	/**
+	* Check if a key is already bound.  Kept for mods built against
+	* earlier versions.
+	*
 	* @since 	0.7
 	* @param	c	Integer to check
 	* @return	True if already bound
 	*/
 	public static boolean isKeyBound(Integer c) {
-		return ((!c.equals(defaultVal)) && bindings.containsKey(c));
+		return (c != null) && isKeyBound(c.intValue());
+	}
+
+	/**
+	* Check if a key is bound to an option in either scope
+	*
+	* @since 	1.5
+	* @param	c				Key code to check
+	* @param	option	Option to check for
+	* @return	True if the key is bound to the option
+	*/
+	private static boolean isBoundTo(int c, ModOptionKey option) {
+		return isTracked(c) && ((bindings[0][c] == option) || (bindings[1][c] == option));
+	}
+
+	/**
+	* Check if a key code fits in the binding table
+	*
+	* @since 	1.5
+	* @param	c	Key code to check
+	* @return	True for keyboard key codes
+	*/
+	private static boolean isTracked(int c) {
+		return (c >= 0) && (c < Keyboard.KEYBOARD_SIZE);
+	}
+
+	//==============
+	// Key Events
+	//==============
+
+	/**
+	* Get the option a key is bound to for the values in use.  An option
+	* using its local value is found before one using its global value.
+	*
+	* @since 	1.5
+	* @param	c	Key code
+	* @return	Option bound to the key, or null if none
+	*/
+	public static ModOptionKey getBoundOption(int c) {
+		if (!isTracked(c) || (c == defaultVal)) {
+			return null;
+		}
+		ModOptionKey option = bindings[0][c];
+		if ((option != null) && !option.useGlobalValue()) {
+			return option;
+		}
+		option = bindings[1][c];
+		return ((option != null) && option.useGlobalValue()) ? option : null;
+	}
+
+	/**
+	* Tell the option bound to a key that it was pressed or released
+	*
+	* @since 	1.5
+	* @param	c				Key code
+	* @param	pressed	True if pressed, false if released
+	* @return	True if an option is bound to the key
+	*/
+	public static boolean dispatch(int c, boolean pressed) {
+		ModOptionKey option = getBoundOption(c);
+		if (option == null) {
+			return false;
+		}
+		ModOptionsEvents.postKey(option, pressed);
+		return true;
+	}
+
+	/**
+	* Send presses and releases of bound keys since the last check.  Called
+	* by the core on every game tick.  Only bound keys are checked, and only
+	* while no screen is open, as nothing can be pressed under a screen.
+	* The keyboard's event queue is left alone, the game reads it itself.
+	*
+	* @since 	1.5
+	* @param	inGame	False while a screen is open, keys count as released
+	* @return	True if any keys are bound and need watching
+	*/
+	public static boolean pollKeys(boolean inGame) {
+		int[] keys = boundKeys;
+		if (!inGame) {
+			// Release anything still down once, then there is nothing to do
+			for (int key = 0; (held > 0) && (key < down.length); key++) {
+				if (down[key]) {
+					down[key] = false;
+					held--;
+					dispatch(key, false);
+				}
+			}
+			return (keys.length > 0);
+		}
+		for (int key : keys) {
+			boolean now = Keyboard.isKeyDown(key);
+			if (now != down[key]) {
+				down[key] = now;
+				held += (now) ? 1 : -1;
+				dispatch(key, now);
+			}
+		}
+		return (keys.length > 0);
 	}
 	
 	//==============
@@ -0,0 +1,101 @@
+package moapi.client;
+
+import moapi.*;
+
+/**
+* Tracks which scope of option values the client currently has loaded.
+* Values are only read from disk when the player moves between the title
+* screen, a single player world and a multiplayer server, never while
+* staying in the same place.
+*
+* @author Jonathan Brazell
+* @version 1.5
+* @since 1.5
+*/
+public class OptionLifecycle {
+	/**
+	* Places the client can be in, each with its own set of option values
+	*/
+	public enum State {
+		/** Nothing loaded yet */
+		STARTUP,
+		/** Title screen and other menus outside a world, global values */
+		TITLE,
+		/** Integrated server world, world values for all mods */
+		SINGLEPLAYER,
+		/** Remote server, server values for client mods */
+		MULTIPLAYER
+	}
+
+	/** Current state */
+	private static State state = State.STARTUP;
+	/** World or server name the current values were loaded for */
+	private static String scopeName = null;
+
+	/**
+	* Move to the title screen, loading global values if coming from elsewhere
+	*
+	* @return	True if this was a transition and values were loaded
+	*/
+	public static boolean enterTitle() {
+		return transition(State.TITLE, "", ModOptionsAPI.getAllMods());
+	}
+
+	/**
+	* Move into a single player world
+	*
+	* @param	worldName	Name of the world being played
+	* @return	True if this was a transition and values were loaded
+	*/
+	public static boolean enterWorld(String worldName) {
+		return transition(State.SINGLEPLAYER, worldName, ModOptionsAPI.getAllMods());
+	}
+
+	/**
+	* Move onto a multiplayer server
+	*
+	* @param	serverName	Name or address of the server
+	* @return	True if this was a transition and values were loaded
+	*/
+	public static boolean enterServer(String serverName) {
+		return transition(State.MULTIPLAYER, serverName, ModOptionsAPI.getClientMods());
+	}
+
+	/**
+	* Load values for a new state, unless already in that state for the same scope
+	*
+	* @param	newState	State being entered
+	* @param	name			World/server name, blank for global
+	* @param	mods			Mods to load values for
+	* @return	True if values were loaded
+	*/
+	private static boolean transition(State newState, String name, ModOptions[] mods) {
+		if ((state == newState) && name.equals(scopeName)) {
+			return false;
+		}
+		// Server and dimension values only hold where they were set
+		ModOptionsAPI.clearScopeValues();
+		ModOptionsAPI.loadOptions(name, mods);
+		state = newState;
+		scopeName = name;
+		return true;
+	}
+
+	/**
+	* Get the current state
+	*
+	* @return	Current state
+	*/
+	public static State getState() {
+		return state;
+	}
+
+	/**
+	* Get the world or server name the current values were loaded for
+	*
+	* @return	Name of the loaded scope, blank for global, null before startup
+	*/
+	public static String getScopeName() {
+		return scopeName;
+	}
+}
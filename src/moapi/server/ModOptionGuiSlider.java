@@ -16,7 +16,7 @@ public class ModOptionGuiSlider extends JSlider implements ChangeListener {
 	protected ModOption option = null;
 
 	public ModOptionGuiSlider(ModOption option) {
-		super(((ModOptionSlider)option).getLowVal(), ((ModOptionSlider)option).getHighVal(), ((ModOptionSlider)option).getValue(false));
+		super(((ModOptionSlider)option).getLowVal(), ((ModOptionSlider)option).getHighVal(), ((ModOptionSlider)option).getInt(false));
 		int ticks = ((ModOptionSlider)option).getHighVal() - ((ModOptionSlider)option).getLowVal(); 
 		setMajorTickSpacing(ticks);
 	    setMinorTickSpacing(ticks / 4);
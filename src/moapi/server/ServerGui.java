@@ -41,6 +41,7 @@ public class ServerGui implements ActionListener {
 	public void actionPerformed(ActionEvent event) {
 		JButton button = (JButton)event.getSource();
 		if (button.getText().equals("Mod Options")) {
+			ModOptionsAPI.awaitLoads();
 			new ServerGuiOptions(dedicatedServer);
 		} else if (button.getText().equals("Exit")) {
 			dedicatedServer.initiateShutdown();
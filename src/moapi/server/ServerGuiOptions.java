@@ -122,8 +122,7 @@ public class ServerGuiOptions extends JFrame implements ActionListener {
   	    	}
   			if ((!option.hasCallback()) || (option.getCallback().onClick(option))) {
 	  	    	if (option instanceof ModOptionMulti) {
-					String nextVal = ((ModOptionMulti)option).getNextValue(((ModOptionMulti)option).getLocalValue());
-		    		option.setLocalValue(nextVal);
+					((ModOptionMulti)option).selectNext(false);
 				} else if (option instanceof ModOptionBoolean) {
 					option.setValue(!((ModOptionBoolean)option).getValue());
 				} else if (option instanceof ModOptionMapped) {
@@ -20,28 +20,55 @@ public class mod_MOAPI extends BaseMod {
   // Other variables
   private boolean cacheGuiOptions = false;
   private boolean cacheGuiIngameMenu = false;
+  private WorldClient lastWorld = null;
+  // True while the in-game hook is set, it stops when onTickInGame returns false
+  private volatile boolean inGameHook = false;
 
   public void load() {
 	if (ModOptionsAPI.isServer())
       return;
-    ModLoader.setInGameHook(this, true, false);
+    startInGameHook();
     ModLoader.setInGUIHook(this, true, false);
+    // Changes for batched callbacks need the tick hook running again
+    final mod_MOAPI mod = this;
+    ModOptionsEvents.setWakeUp(new Runnable() {
+      public void run() {
+        mod.startInGameHook();
+      }
+    });
+  }
+
+  private void startInGameHook() {
+    inGameHook = true;
+    ModLoader.setInGameHook(this, true, false);
   }
 
   public boolean onTickInGame(float f, Minecraft mc) {
-    if (mc.isIntegratedServerRunning()) {
-      ModOptionsAPI.loadOptions(mc.getIntegratedServer().getWorldName(), ModOptionsAPI.getAllMods());
-    } else {
-    	ServerData currentServerData = null;
-    	try {
-    		currentServerData = ReflectionHelper.getPrivateValue(Minecraft.class, mc, ServerData.class, 0);
-  	  	} catch (Exception ignored) {}
-        String serverName = currentServerData.serverName;
-        if (serverName==null || serverName.length()==0)
-          serverName = currentServerData.serverIP;
-	    ModOptionsAPI.loadOptions(serverName, ModOptionsAPI.getClientMods());
+    // The hook keeps running while keys are bound, only look up the world when it changes
+    if (mc.theWorld != lastWorld) {
+      lastWorld = mc.theWorld;
+      if (mc.isIntegratedServerRunning()) {
+        OptionLifecycle.enterWorld(mc.getIntegratedServer().getWorldName());
+      } else {
+      	ServerData currentServerData = null;
+      	try {
+      		currentServerData = ReflectionHelper.getPrivateValue(Minecraft.class, mc, ServerData.class, 0);
+    	  	} catch (Exception ignored) {}
+          String serverName = currentServerData.serverName;
+          if (serverName==null || serverName.length()==0)
+            serverName = currentServerData.serverIP;
+  	    OptionLifecycle.enterServer(serverName);
+      }
+      // Each dimension gets a world of its own, so this also catches moving between them
+      if (mc.theWorld != null)
+        ModOptionsAPI.setDimension(mc.theWorld.provider.getDimensionName());
     }
-    return false; // Only run once
+    // Only run once, unless background loads, changes or bound keys need it
+    boolean loading = ModOptionsAPI.applyLoads();
+    boolean waiting = ModOptionsAPI.dispatchEvents();
+    boolean keys = ModOptionKey.pollKeys(mc.currentScreen == null);
+    inGameHook = loading || waiting || keys;
+    return inGameHook;
   }
 
   private List getControlList(GuiScreen screen) {
@@ -53,9 +80,23 @@ public class mod_MOAPI extends BaseMod {
   }
   
   public boolean onTickInGUI(float ticks, Minecraft mc, GuiScreen screen) {
+    ModOptionsAPI.applyLoads();
+    ModOptionsAPI.dispatchEvents();
+    // Keys count as released under a screen, and keys bound while the hook was
+    // stopped (such as in the controls menu) are watched once it closes
+    if (ModOptionKey.pollKeys(false) && !inGameHook) {
+      startInGameHook();
+    }
+    // A new world (such as another dimension, behind the terrain screen) is picked up in game
+    if (mc.theWorld != lastWorld && !inGameHook) {
+      startInGameHook();
+    }
+    // Out of any world, back to global values (only loads on the transition)
+    if (mc.theWorld == null && OptionLifecycle.enterTitle()) {
+      lastWorld = null;
+      startInGameHook(); // Reset for next game
+    }
     if (screen instanceof GuiMainMenu) {
-	    ModOptionsAPI.loadOptions("", ModOptionsAPI.getAllMods());
-      ModLoader.setInGameHook(this, true, false); // Reset for next game
       cacheGuiOptions = false;
       cacheGuiIngameMenu = false;
     } else if (screen instanceof GuiOptions) {